@@ -0,0 +1,89 @@
+package huffman;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+/**
+ * measures how the block-parallel container scales with the number of cores. the same generated
+ * text is compressed and decompressed as a single block and then as blocks on pools of 1, 2, 4,
+ * ... threads up to the number of cores, and the throughput of each is reported in MB of original
+ * data per second together with the speedup over one thread. the decompressed file is checked to
+ * be equal to the original.
+ * JMH is not available to this project, so the benchmark is a plain main class that warms up
+ * and then takes the best of a few runs. the decompressed file is written to the working folder.
+ * usage: BlockBenchmark [file size in MB] [runs] [max threads]
+ */
+public class BlockBenchmark {
+	public static void main(String[] args) throws Exception {
+		int fileSize = args.length > 0 ? Integer.parseInt(args[0]) * 1024 * 1024 : 32 * 1024 * 1024;
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		Path file = EncoderBenchmark.createInputFile(fileSize);
+		String fileName = file.getFileName().toString();
+		Path compressedFile = Files.createTempFile("block", ".huf");
+		Path decompressedFile = Paths.get(fileName.substring(0, fileName.lastIndexOf(".")) + "-decompressed.txt");
+		byte[] original = Files.readAllBytes(file);
+		double megabytes = fileSize / (1024.0 * 1024.0);
+
+		System.out.printf("%d MB of text, %d cores%n", fileSize / (1024 * 1024), Runtime.getRuntime().availableProcessors());
+		System.out.printf("%14s %14s %8s %14s %8s %12s%n", "", "compress", "speedup", "decompress", "speedup", "size");
+		double baseCompress = 0;
+		double baseDecompress = 0;
+		// 0 threads is the container without blocks.
+		ArrayList<Integer> threadCounts = new ArrayList<Integer>();
+		threadCounts.add(0);
+		for (int threads = 1; threads < maxThreads; threads *= 2) {
+			threadCounts.add(threads);
+		}
+		threadCounts.add(maxThreads);
+		for (int threads: threadCounts) {
+			HuffmanCompressor huffman = new HuffmanCompressor();
+			huffman.setBlockSize(threads == 0 ? 0 : 1024 * 1024);
+			huffman.setParallelism(Math.max(1, threads));
+
+			long compressTime = Long.MAX_VALUE;
+			long decompressTime = Long.MAX_VALUE;
+			byte[] compressed = null;
+			// the first run only warms up the JIT.
+			for (int run = 0; run <= runs; run++) {
+				long startTime = System.nanoTime();
+				compressed = huffman.compressToBytes(file.toString());
+				long time = System.nanoTime() - startTime;
+				Files.write(compressedFile, compressed);
+
+				startTime = System.nanoTime();
+				huffman.deCommpressFile(compressedFile.toString());
+				long decodeTime = System.nanoTime() - startTime;
+				if (run > 0) {
+					compressTime = Math.min(compressTime, time);
+					decompressTime = Math.min(decompressTime, decodeTime);
+				}
+			}
+			huffman.setParallelism(0);
+
+			if (!Arrays.equals(original, Files.readAllBytes(decompressedFile))) {
+				System.out.println("the decompressed file is different from the original file");
+			}
+			double compressRate = megabytes * 1e9 / compressTime;
+			double decompressRate = megabytes * 1e9 / decompressTime;
+			if (threads == 0) {
+				System.out.printf("%14s %9.1f MB/s %8s %9.1f MB/s %8s %12d%n", "single block", compressRate, "", decompressRate, "", compressed.length);
+				continue;
+			}
+			if (threads == 1) {
+				baseCompress = compressRate;
+				baseDecompress = decompressRate;
+			}
+			System.out.printf("%14s %9.1f MB/s %7.2fx %9.1f MB/s %7.2fx %12d%n", threads + " threads", compressRate, compressRate / baseCompress,
+					decompressRate, decompressRate / baseDecompress, compressed.length);
+		}
+
+		Files.delete(file);
+		Files.delete(compressedFile);
+		new File(decompressedFile.toString()).delete();
+	}
+}
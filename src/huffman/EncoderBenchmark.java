@@ -0,0 +1,73 @@
+package huffman;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+/**
+ * compares the bit-packed encoder with the encoder that builds the compressed data from code
+ * strings. both compress the same generated text in memory, the outputs are checked to be equal
+ * and the throughput of each is reported in MB of input per second.
+ * JMH is not available to this project, so the benchmark is a plain main class that warms up
+ * and then takes the best of a few runs.
+ * usage: EncoderBenchmark [file size in KB] [runs]
+ */
+public class EncoderBenchmark {
+	static final String[] WORDS = {"the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "reliable", "data",
+			"transfer", "packet", "window", "huffman", "code", "server", "client", "\n", ", ", ". "};
+
+	public static void main(String[] args) throws Exception {
+		int fileSize = args.length > 0 ? Integer.parseInt(args[0]) * 1024 : 4 * 1024 * 1024;
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+		Path file = createInputFile(fileSize);
+		HuffmanCompressor huffman = new HuffmanCompressor();
+		// the legacy format keeps the original string encoder as the baseline.
+		huffman.setBinaryContainer(false);
+		double megabytes = fileSize / (1024.0 * 1024.0);
+
+		System.out.printf("%d KB of text%n", fileSize / 1024);
+		byte[] expected = null;
+		for (boolean bitPacked: new boolean[] {false, true}) {
+			huffman.setBitPackedEncoder(bitPacked);
+			long bestTime = Long.MAX_VALUE;
+			byte[] compressed = null;
+			// the first run only warms up the JIT.
+			for (int run = 0; run <= runs; run++) {
+				long startTime = System.nanoTime();
+				compressed = huffman.compressToBytes(file.toString());
+				long time = System.nanoTime() - startTime;
+				if (run > 0) {
+					bestTime = Math.min(bestTime, time);
+				}
+			}
+
+			if (expected == null) {
+				expected = compressed;
+			}
+			else if (!Arrays.equals(expected, compressed)) {
+				System.out.println("the encoders wrote different data");
+			}
+			System.out.printf("%12s %10.1f MB/s, %d bytes compressed%n", bitPacked ? "bit-packed" : "strings",
+					megabytes * 1e9 / bestTime, compressed.length);
+		}
+
+		Files.delete(file);
+	}
+
+	/**
+	 * creates a text file of random words.
+	 * @param size the size of the file in bytes.
+	 * @return the path of the file.
+	 */
+	static Path createInputFile(int size) throws Exception {
+		Random random = new Random(42);
+		StringBuilder builder = new StringBuilder(size + 16);
+		while (builder.length() < size) {
+			builder.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+		}
+		Path file = Files.createTempFile("encoder", ".txt");
+		Files.write(file, builder.substring(0, size).getBytes());
+		return file;
+	}
+}
@@ -0,0 +1,110 @@
+package huffman;
+
+import java.util.ArrayList;
+import java.util.Collections;
+/**
+ * computes the lengths of optimal prefix codes that are not longer than a limit, with the
+ * package-merge algorithm. every character is a coin whose weight is its frequency, one list of
+ * coins for each bit of the limit. starting from the longest bit, the coins of a list are paired
+ * into packages in the order of their weight and the packages are merged with the coins of the
+ * next list. the 2n - 2 lightest items of the last list are the cheapest set of coins, and the
+ * code length of a character is the number of its coins in that set.
+ * without a limit the lengths are as short as the lengths of a huffman tree, the limit only
+ * costs compression on very skewed inputs, where a tree would give codes of more than limit bits.
+ */
+public class HuffmanCodeLengths {
+	private HuffmanCodeLengths() {
+	}
+
+	/**
+	 * computes the code lengths.
+	 * @param frequencies the frequency of every character.
+	 * @param maxLength the longest code length, 2 ^ maxLength must not be less than the number of characters.
+	 * @return the code length of every character, 0 for characters with frequency 0. a file with
+	 * a single character gets a code of one bit.
+	 */
+	public static int[] build(int[] frequencies, int maxLength) {
+		int[] codeLengths = new int[frequencies.length];
+		ArrayList<Item> leaves = new ArrayList<Item>();
+		for (int i = 0; i < frequencies.length; i++) {
+			if (frequencies[i] > 0) {
+				leaves.add(new Item(frequencies[i], i, null, null));
+			}
+		}
+
+		if (leaves.size() == 1) {
+			codeLengths[leaves.get(0).character] = 1;
+		}
+		if (leaves.size() <= 1) {
+			return codeLengths;
+		}
+		if (maxLength < 31 && (1 << maxLength) < leaves.size()) {
+			throw new IllegalArgumentException(leaves.size() + " characters do not fit in codes of " + maxLength + " bits");
+		}
+
+		// ties keep the order of the characters, so the lengths are the same on every run.
+		Collections.sort(leaves, (first, second) -> Long.compare(first.weight, second.weight));
+
+		ArrayList<Item> items = leaves;
+		for (int length = 1; length < maxLength; length++) {
+			ArrayList<Item> packages = new ArrayList<Item>(items.size() / 2);
+			for (int i = 0; i + 1 < items.size(); i += 2) {
+				packages.add(new Item(items.get(i).weight + items.get(i + 1).weight, -1, items.get(i), items.get(i + 1)));
+			}
+			items = merge(leaves, packages);
+		}
+
+		for (int i = 0; i < 2 * leaves.size() - 2; i++) {
+			count(items.get(i), codeLengths);
+		}
+		return codeLengths;
+	}
+
+	/**
+	 * merges two lists that are sorted by weight, on equal weights the leaves come first.
+	 */
+	private static ArrayList<Item> merge(ArrayList<Item> leaves, ArrayList<Item> packages) {
+		ArrayList<Item> merged = new ArrayList<Item>(leaves.size() + packages.size());
+		int leaf = 0;
+		int box = 0;
+		while (leaf < leaves.size() || box < packages.size()) {
+			if (box == packages.size() || (leaf < leaves.size() && leaves.get(leaf).weight <= packages.get(box).weight)) {
+				merged.add(leaves.get(leaf++));
+			}
+			else {
+				merged.add(packages.get(box++));
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * adds one to the code length of every character in an item.
+	 */
+	private static void count(Item item, int[] codeLengths) {
+		if (item.character >= 0) {
+			codeLengths[item.character]++;
+		}
+		else {
+			count(item.first, codeLengths);
+			count(item.second, codeLengths);
+		}
+	}
+
+	/**
+	 * a coin of a character or a package of two items.
+	 */
+	private static class Item {
+		final long weight;
+		final int character;      // -1 for a package.
+		final Item first;
+		final Item second;
+
+		Item(long weight, int character, Item first, Item second) {
+			this.weight = weight;
+			this.character = character;
+			this.first = first;
+			this.second = second;
+		}
+	}
+}
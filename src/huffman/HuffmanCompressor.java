@@ -1,27 +1,43 @@
 package huffman;
 
 import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.CharBuffer;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 public class HuffmanCompressor {
+	static final int MAX_DATA_SIZE = Integer.MAX_VALUE - 8;   // the largest array the VM allocates.
+	
 	int[] frequencyTable = new int[256];
 	PriorityQueue<HuffmanNode> nodes = new PriorityQueue<HuffmanNode>();
 	String[] codeTable = new String[256];
+	int[] codeBits = new int[256];      // the codes of the code table in the low bits, the first bit of a code is its highest bit.
+	int[] codeLengths = new int[256];
+	boolean bitPackedEncoder = true;    // false writes the data through the code strings, as before.
+	boolean binaryContainer = true;     // false writes the text header and the '0' and '1' tail of the legacy format.
+	int blockSize = 1024 * 1024;        // containers of longer files are split into blocks, 0 writes a single block.
+	ForkJoinPool blockPool = ForkJoinPool.commonPool();   // compresses and decompresses the blocks in parallel.
 	
 	/**
 	 * used to compress and then decompress a file, also prints the time taken to finish these two operations,
@@ -59,11 +75,16 @@ public class HuffmanCompressor {
 	 * @param textBytes the data of a file as an array of unsigned bytes.
 	 */
 	private void buildFrequencyTable(int[] textBytes) {
-		for (int i = 0; i < textBytes.length; i++) {
-			if (textBytes[i] == 1111) {
-				continue;
+		if (this.isBlocked(textBytes.length)) {
+			this.countBlockFrequencies(textBytes);
+		}
+		else {
+			for (int i = 0; i < textBytes.length; i++) {
+				if (textBytes[i] == 1111) {
+					continue;
+				}
+				frequencyTable[textBytes[i]]++;
 			}
-			frequencyTable[textBytes[i]]++;
 		}
 		
 		for (int i = 0; i < this.frequencyTable.length; i++) {
@@ -74,6 +95,34 @@ public class HuffmanCompressor {
 		}
 	}
 	
+	/**
+	 * counts the characters of every block in parallel and adds the counts to the frequency table.
+	 * @param textBytes the data of a file as an array of unsigned bytes.
+	 */
+	private void countBlockFrequencies(int[] textBytes) {
+		ArrayList<ForkJoinTask<int[]>> tasks = new ArrayList<ForkJoinTask<int[]>>();
+		for (int start = 0; start < textBytes.length; start += this.blockSize) {
+			int from = start;
+			int to = (int) Math.min(textBytes.length, (long) start + this.blockSize);
+			tasks.add(this.blockPool.submit(() -> {
+				int[] counts = new int[256];
+				for (int i = from; i < to; i++) {
+					if (textBytes[i] != 1111) {
+						counts[textBytes[i]]++;
+					}
+				}
+				return counts;
+			}));
+		}
+		
+		for (ForkJoinTask<int[]> task: tasks) {
+			int[] counts = task.join();
+			for (int i = 0; i < counts.length; i++) {
+				this.frequencyTable[i] += counts[i];
+			}
+		}
+	}
+	
 	/**
 	 * builds a huffman tree from the generated huffman nodes.
 	 * @return the root node in the tree.
@@ -111,6 +160,204 @@ public class HuffmanCompressor {
 		printCompressedFile(filePath, fileBytes);
 	}
 	
+	/**
+	 * compresses a file in memory, the result is the same as the content of the file 
+	 * written by compressFile, but nothing is written to disk.
+	 * @param filePath the path to the file.
+	 * @return the compressed file.
+	 */
+	public byte[] compressToBytes(String filePath) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, new File(filePath).length() / 2 + 1024));
+		this.compressTo(filePath, output);
+		return output.toByteArray();
+	}
+	
+	/**
+	 * compresses a file to a stream, the result is the same as the content of the file 
+	 * written by compressFile. the stream is flushed but not closed.
+	 * @param filePath the path to the file.
+	 * @param output the stream to write the compressed file to.
+	 */
+	public void compressTo(String filePath, OutputStream output) {
+		for (int i = 0; i < this.codeTable.length; i++) {
+			this.codeTable[i] = "";
+			this.frequencyTable[i] = 0;
+		}
+		
+		int[] fileBytes = this.readFile(filePath);
+		buildFrequencyTable(fileBytes);
+		HuffmanNode root = buildHuffmanTree();
+		generateCodeTable(root, "");
+		writeCompressedFile(filePath, fileBytes, output);
+	}
+	
+	/**
+	 * compresses a file to a stream without holding the file in memory, the result is the same
+	 * as the content of the file written by compressFile in the binary container format. the file
+	 * is read through a channel twice, the first pass counts the characters and the second
+	 * encodes the chunks it reads straight into the stream, one block after the other, so the
+	 * memory does not grow with the file. the legacy format is compressed in memory by compressTo.
+	 * the stream is flushed but not closed.
+	 * @param filePath the path to the file.
+	 * @param output the stream to write the compressed file to.
+	 * @throws IOException if the file can not be read, changes between the passes or the stream fails.
+	 */
+	public void compressStreaming(String filePath, OutputStream output) throws IOException {
+		if (!this.binaryContainer) {
+			this.compressTo(filePath, output);
+			return;
+		}
+		
+		byte[] chunk = new byte[64 * 1024];
+		FileChannel channel = FileChannel.open(new File(filePath).toPath(), StandardOpenOption.READ);
+		try {
+			// the first pass, an int frequency of a larger file is scaled down, which only changes the code lengths.
+			long[] counts = new long[256];
+			long length = readChunks(channel, chunk, counts, null, -1);
+			long maxCount = 0;
+			for (long count: counts) {
+				maxCount = Math.max(maxCount, count);
+			}
+			int shift = 0;
+			while ((maxCount >>> shift) > Integer.MAX_VALUE) {
+				shift++;
+			}
+			int[] frequencies = new int[256];
+			for (int i = 0; i < counts.length; i++) {
+				frequencies[i] = counts[i] == 0 ? 0 : (int) Math.max(1, counts[i] >>> shift);
+			}
+			int[] codeLengths = HuffmanCodeLengths.build(frequencies, HuffmanContainer.MAX_CODE_LENGTH);
+			long dataBits = 0;
+			for (int i = 0; i < counts.length; i++) {
+				dataBits += counts[i] * codeLengths[i];
+			}
+			long[] codes = HuffmanContainer.canonicalCodes(codeLengths);
+			int[] codeBits = new int[codes.length];
+			for (int i = 0; i < codes.length; i++) {
+				codeBits[i] = (int) codes[i];
+			}
+			
+			// the second pass, every block ends on a byte of its own.
+			int blockSize = this.isBlocked(length) ? this.blockSize : 0;
+			if (blockSize == 0 && (dataBits + 7) >>> 3 > MAX_DATA_SIZE) {
+				throw new IOException("the compressed data of " + ((dataBits + 7) >>> 3) + " bytes does not fit in one block, "
+						+ "write the file as a binary container with blocks");
+			}
+			int blockCount = blockSize == 0 ? 0 : (int) ((length + blockSize - 1) / blockSize);
+			HuffmanContainer.writeHeader(output, new File(filePath).getName(), codeLengths, length, blockSize, blockCount);
+			PackedStreamEncoder encoder = new PackedStreamEncoder(codeBits, codeLengths, output);
+			channel.position(0);
+			if (blockSize == 0) {
+				readChunks(channel, chunk, null, encoder, length);
+				int checksum = encoder.getChecksum();
+				HuffmanContainer.writeTrailer(output, encoder.finish(), checksum);
+			}
+			else {
+				int[] blockDataSizes = new int[blockCount];
+				int[] blockChecksums = new int[blockCount];
+				long lastDataBits = 0;
+				for (int block = 0; block < blockCount; block++) {
+					long blockLength = Math.min(blockSize, length - (long) block * blockSize);
+					readChunks(channel, chunk, null, encoder, blockLength);
+					blockChecksums[block] = encoder.getChecksum();
+					lastDataBits = encoder.finish();
+					blockDataSizes[block] = (int) ((lastDataBits + 7) >>> 3);
+				}
+				int checksum = HuffmanContainer.writeBlockTable(output, blockDataSizes, blockChecksums);
+				HuffmanContainer.writeTrailer(output, lastDataBits, checksum);
+			}
+			
+			if (channel.read(ByteBuffer.wrap(chunk)) > 0 || !Arrays.equals(counts, encoder.counts)) {
+				throw new IOException(filePath + " changed while it was compressed");
+			}
+			output.flush();
+		} finally {
+			channel.close();
+		}
+	}
+	
+	/**
+	 * reads a file through a chunk and counts its characters or encodes it.
+	 * @param channel the channel of the file, read from its position.
+	 * @param chunk the array the file is read into.
+	 * @param counts the number of every character, the characters read are added. null when encoding.
+	 * @param encoder the encoder of the chunks, null to only count the characters.
+	 * @param length the number of bytes to read, -1 to read to the end of the file.
+	 * @return the number of bytes read.
+	 * @throws IOException if the file can not be read, ends before length bytes or the stream fails.
+	 */
+	private static long readChunks(FileChannel channel, byte[] chunk, long[] counts, PackedStreamEncoder encoder, long length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(chunk);
+		long total = 0;
+		while (length < 0 || total < length) {
+			buffer.clear();
+			if (length >= 0) {
+				buffer.limit((int) Math.min(chunk.length, length - total));
+			}
+			int read = channel.read(buffer);
+			if (read < 0) {
+				break;
+			}
+			if (encoder != null) {
+				encoder.encode(chunk, read);
+			}
+			else {
+				for (int i = 0; i < read; i++) {
+					counts[chunk[i] & 0xFF]++;
+				}
+			}
+			total += read;
+		}
+		if (length >= 0 && total < length) {
+			throw new IOException("the file ended while it was compressed");
+		}
+		return total;
+	}
+	
+	/**
+	 * selects the encoder of the compressed data in the legacy format, both write the same bytes.
+	 * the binary container is always written with the packed codes.
+	 * @param bitPackedEncoder true for the packed codes, false for the code strings.
+	 */
+	public void setBitPackedEncoder(boolean bitPackedEncoder) {
+		this.bitPackedEncoder = bitPackedEncoder;
+	}
+	
+	/**
+	 * selects the format of the compressed file, files in both formats can be decompressed.
+	 * @param binaryContainer true for the binary container, false for the legacy text header.
+	 */
+	public void setBinaryContainer(boolean binaryContainer) {
+		this.binaryContainer = binaryContainer;
+	}
+	
+	/**
+	 * sets the size of the blocks that the binary container of a longer file is split into.
+	 * @param blockSize the number of original bytes in a block, 0 writes every file as a single block.
+	 */
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+	}
+	
+	/**
+	 * sets the number of threads that compress and decompress the blocks.
+	 * @param parallelism the number of threads, 0 for the common pool.
+	 */
+	public void setParallelism(int parallelism) {
+		if (this.blockPool != ForkJoinPool.commonPool()) {
+			this.blockPool.shutdown();
+		}
+		this.blockPool = parallelism > 0 ? new ForkJoinPool(parallelism) : ForkJoinPool.commonPool();
+	}
+	
+	/**
+	 * returns true if a file of the given length is written in blocks.
+	 * @param length the length of the file.
+	 */
+	private boolean isBlocked(long length) {
+		return this.binaryContainer && this.blockSize > 0 && length > this.blockSize;
+	}
+	
 	/**
 	 * used to compress a folder, also prints the time taken to finish this operation,
 	 * the time is in milliseconds.
@@ -122,7 +369,16 @@ public class HuffmanCompressor {
 		buildFrequencyTable(fileBytes);
 		HuffmanNode root = buildHuffmanTree();
 		generateCodeTable(root, "");
-		printCompressedFolder(folder, fileBytes);
+		if (this.binaryContainer) {
+			try {
+				this.writeFolderContainer(folder, fileBytes);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		else {
+			printCompressedFolder(folder, fileBytes);
+		}
 	}
 	
 	/**
@@ -131,16 +387,27 @@ public class HuffmanCompressor {
 	 * @param filePath the path to the compressed file.
 	 */
 	public void deCommpressFile(String filePath) {
-		String[] compressedFileData;
-		
 		for (int i = 0; i < this.codeTable.length; i++) {
 			this.codeTable[i] = "";
 			this.frequencyTable[i] = 0;
 		}
 		
-		compressedFileData = this.readCompressedFile(filePath);
-		buildHuffmanTree();
-		printDecompressedFile(compressedFileData[0], compressedFileData);
+		try {
+			FileInputStream input = new FileInputStream(filePath);
+			FileChannel channel = input.getChannel();
+			MappedByteBuffer compressedFileData = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (HuffmanContainer.isContainer(compressedFileData)) {
+				printDecompressedContainer(compressedFileData);
+			}
+			else {
+				String fileName = this.readCompressedFile(compressedFileData);
+				printDecompressedFile(fileName, compressedFileData);
+			}
+			channel.close();
+			input.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 	
 	/**
@@ -149,17 +416,27 @@ public class HuffmanCompressor {
 	 * @param folderPath the path to the compressed file.
 	 */
 	private void deCompressFolder(String folderPath) {
-		String[] compressedFileData;
-		
 		for (int i = 0; i < this.codeTable.length; i++) {
 			this.codeTable[i] = "";
 			this.frequencyTable[i] = 0;
 		}
 		
-		compressedFileData = this.readCompressedFolder(folderPath);
-		buildHuffmanTree();
-		printDecompressedFolder(compressedFileData[0], compressedFileData);
-		
+		try {
+			FileInputStream input = new FileInputStream(folderPath);
+			FileChannel channel = input.getChannel();
+			MappedByteBuffer compressedFolderData = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (HuffmanContainer.isContainer(compressedFolderData)) {
+				printDecompressedFolderContainer(compressedFolderData);
+			}
+			else {
+				buildHuffmanTree();
+				printDecompressedFolder(compressedFolderData);
+			}
+			channel.close();
+			input.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 	
 	/**
@@ -184,35 +461,42 @@ public class HuffmanCompressor {
 	}
 	
 	/**
-	 * returns the index of the given character in the code table and -1 if the character is not found.
-	 * @param code the character to get the index of.
-	 * @return the index of the character and -1 if the character is not found.
+	 * used to create the output file and then print the content of the output file.
+	 * @param filePath the path of the compressed file.
+	 * @param fileBytes the unsigned bytes of the input file.
 	 */
-	private int getCharacterIndex(String code) {
-		for (int i = 0; i < this.codeTable.length; i++){
-			if (codeTable[i].equals(code)) {
-				return i;
-			}
+	private void printCompressedFile(String filePath, int[] fileBytes) {
+		try {
+			File sourceFile = new File(filePath);
+			String fileName = sourceFile.getName().substring(0, sourceFile.getName().lastIndexOf("."));
+			
+			// create the output file
+			FileOutputStream writer = new FileOutputStream(fileName + "-compressed.txt");
+			writeCompressedFile(filePath, fileBytes, writer);
+			writer.close();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		
-		return -1;
 	}
 	
 	/**
-	 * used to create the output file and then print the content of the output file.
+	 * writes the compressed form of a file to a stream, the stream is flushed but not closed.
 	 * @param filePath the path of the compressed file.
 	 * @param fileBytes the unsigned bytes of the input file.
+	 * @param output the stream to write the compressed file to.
 	 */
-	private void printCompressedFile(String filePath, int[] fileBytes) {
+	private void writeCompressedFile(String filePath, int[] fileBytes, OutputStream output) {
 		try {
+			if (this.binaryContainer) {
+				this.writeContainer(filePath, fileBytes, output);
+				return;
+			}
+			
 			File sourceFile = new File(filePath);
 			String fileName = sourceFile.getName().substring(0, sourceFile.getName().lastIndexOf("."));
 			String fileFormat = sourceFile.getName().substring(sourceFile.getName().lastIndexOf("."));
 			
-			// create the output file
-			File File = new File(fileName + "-compressed.txt");
-			FileWriter writer = new FileWriter(File);
-			BufferedWriter bufferedWriter = new BufferedWriter(writer);
+			BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(output));
 			
 			// write the file name and extension.
 			bufferedWriter.write(fileName);
@@ -231,49 +515,279 @@ public class HuffmanCompressor {
 			// '--' is used to seperate the table from the data.
 			bufferedWriter.write("--");
 			bufferedWriter.newLine();
-			bufferedWriter.close();
-			
-			FileOutputStream writer2 = new FileOutputStream(File, true);
-			BufferedOutputStream bufferedWriter2 = new BufferedOutputStream(writer2);
+			bufferedWriter.flush();
 			
 			// write the data of the compressed file to the output file.
-			int index = 0;
-			String code = this.codeTable[fileBytes[index]];
-			while(index < fileBytes.length) {
-				if (code.length() < 8 && index + 1 == fileBytes.length) {
-					if (code.length() > 0) {
-						code = "**" + code;
-						for (char tempChar: code.toCharArray()) {
-							bufferedWriter2.write(tempChar);
-						}
-						bufferedWriter2.close();
-						break;
-					}
-					else {
-						break;
-					}
-				}
-				
-				if (code.length() < 8) {
-					index++;
-					code = code + this.codeTable[fileBytes[index]];
+			if (this.bitPackedEncoder && this.packCodeTable()) {
+				this.writePackedData(fileBytes, output);
+			}
+			else {
+				this.writeStringData(fileBytes, output);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * packs the code strings of the code table into codeBits and codeLengths.
+	 * @return false if a code is longer than 32 bits and can not be packed.
+	 */
+	private boolean packCodeTable() {
+		for (int i = 0; i < this.codeTable.length; i++) {
+			String code = this.codeTable[i];
+			if (code.length() > 32) {
+				return false;
+			}
+			this.codeLengths[i] = code.length();
+			this.codeBits[i] = code.isEmpty() ? 0 : (int) Long.parseLong(code, 2);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * writes the data of a file with the packed codes, the bits that do not fill a last byte are
+	 * written as '0' and '1' characters after "**", just like the string encoder writes them.
+	 * @param fileBytes the unsigned bytes of the input file.
+	 * @param output the stream to write the data to.
+	 * @throws IOException if the stream fails.
+	 */
+	private void writePackedData(int[] fileBytes, OutputStream output) throws IOException {
+		long dataBits = this.getDataBits(this.codeLengths);
+		byte[] data = this.encodePackedData(fileBytes, 0, fileBytes.length, dataBits);
+		int byteCount = (int) (dataBits >>> 3);
+		int extraBits = (int) (dataBits & 7);
+		output.write(data, 0, byteCount);
+		
+		if (extraBits > 0) {
+			output.write('*');
+			output.write('*');
+			for (int i = 0; i < extraBits; i++) {
+				output.write(((data[byteCount] << i) & 0x80) == 0 ? '0' : '1');
+			}
+		}
+		output.flush();
+	}
+	
+	/**
+	 * returns the number of bits that codes of the given lengths take for the characters of the file.
+	 * @param codeLengths the code length of every character.
+	 */
+	private long getDataBits(int[] codeLengths) {
+		long dataBits = 0;
+		for (int i = 0; i < this.frequencyTable.length; i++) {
+			dataBits += (long) this.frequencyTable[i] * codeLengths[i];
+		}
+		return dataBits;
+	}
+	
+	/**
+	 * encodes the data of a file with the packed codes. the codes are shifted into a 64-bit
+	 * accumulator that is emptied into the output array 32 bits at a time, the size of the array
+	 * is known from the frequencies.
+	 * @param fileBytes the unsigned bytes of the input file.
+	 * @param from the index of the first byte to encode.
+	 * @param to the index after the last byte to encode.
+	 * @param dataBits the number of bits the codes take.
+	 * @return the data, the last byte is padded with 0 bits.
+	 * @throws IOException if the data does not fit in an array.
+	 */
+	private byte[] encodePackedData(int[] fileBytes, int from, int to, long dataBits) throws IOException {
+		// the size would overflow an int, a file this large has to be written in blocks.
+		if ((dataBits + 7) >>> 3 > MAX_DATA_SIZE) {
+			throw new IOException("the compressed data of " + ((dataBits + 7) >>> 3) + " bytes does not fit in one block, "
+					+ "write the file as a binary container with blocks");
+		}
+		int[] codeBits = this.codeBits;
+		int[] codeLengths = this.codeLengths;
+		byte[] data = new byte[(int) ((dataBits + 7) >>> 3)];
+		int position = 0;
+		long bitBuffer = 0;    // the last bitCount bits are waiting to be written.
+		int bitCount = 0;
+		for (int i = from; i < to; i++) {
+			int character = fileBytes[i];
+			bitBuffer = (bitBuffer << codeLengths[character]) | (codeBits[character] & 0xFFFFFFFFL);
+			bitCount += codeLengths[character];
+			if (bitCount >= 32) {
+				bitCount -= 32;
+				int word = (int) (bitBuffer >>> bitCount);
+				data[position] = (byte) (word >>> 24);
+				data[position + 1] = (byte) (word >>> 16);
+				data[position + 2] = (byte) (word >>> 8);
+				data[position + 3] = (byte) word;
+				position += 4;
+			}
+		}
+		while (bitCount >= 8) {
+			bitCount -= 8;
+			data[position++] = (byte) (bitBuffer >>> bitCount);
+		}
+		if (bitCount > 0) {
+			data[position] = (byte) (bitBuffer << (8 - bitCount));
+		}
+		return data;
+	}
+	
+	/**
+	 * writes a file in the binary container format. the code lengths are limited to
+	 * HuffmanContainer.MAX_CODE_LENGTH bits instead of taken from the huffman tree, so the codes
+	 * always fit the packed encoder and the single table of the decoder. the codes are the
+	 * canonical codes of these lengths, which are rebuilt from the lengths alone.
+	 * @param filePath the path of the compressed file.
+	 * @param fileBytes the unsigned bytes of the input file.
+	 * @param output the stream to write the compressed file to.
+	 * @throws IOException if the stream fails.
+	 */
+	private void writeContainer(String filePath, int[] fileBytes, OutputStream output) throws IOException {
+		// a file of one character gets a 1 bit code, a length of 0 means that a character does not occur.
+		int[] codeLengths = HuffmanCodeLengths.build(this.frequencyTable, HuffmanContainer.MAX_CODE_LENGTH);
+		long[] codes = HuffmanContainer.canonicalCodes(codeLengths);
+		for (int i = 0; i < codes.length; i++) {
+			this.codeBits[i] = (int) codes[i];
+			this.codeLengths[i] = codeLengths[i];
+		}
+		
+		if (this.isBlocked(fileBytes.length)) {
+			this.writeBlocks(filePath, fileBytes, codeLengths, output);
+			return;
+		}
+		
+		long dataBits = this.getDataBits(codeLengths);
+		byte[] data = this.encodePackedData(fileBytes, 0, fileBytes.length, dataBits);
+		
+		CRC32 checksum = new CRC32();
+		byte[] chunk = new byte[64 * 1024];
+		for (int i = 0; i < fileBytes.length; i += chunk.length) {
+			int length = Math.min(chunk.length, fileBytes.length - i);
+			for (int j = 0; j < length; j++) {
+				chunk[j] = (byte) fileBytes[i + j];
+			}
+			checksum.update(chunk, 0, length);
+		}
+		
+		HuffmanContainer.writeHeader(output, new File(filePath).getName(), codeLengths, fileBytes.length, 0, 0);
+		output.write(data);
+		HuffmanContainer.writeTrailer(output, dataBits, (int) checksum.getValue());
+		output.flush();
+	}
+	
+	/**
+	 * writes a file in the binary container format as blocks that are encoded in parallel. every
+	 * block is encoded with the code table of the whole file into bytes of its own, so a block
+	 * can be decoded without the blocks in front of it. the blocks are written in order as their
+	 * tasks finish, only blocksInFlight() blocks are encoded ahead of the one that is written so
+	 * the encoded data held in memory does not grow with the file.
+	 * @param filePath the path of the compressed file.
+	 * @param fileBytes the unsigned bytes of the input file.
+	 * @param codeLengths the code length of every character, the codes are in codeBits.
+	 * @param output the stream to write the compressed file to.
+	 * @throws IOException if the stream fails.
+	 */
+	private void writeBlocks(String filePath, int[] fileBytes, int[] codeLengths, OutputStream output) throws IOException {
+		int blockSize = this.blockSize;
+		int blockCount = (int) (((long) fileBytes.length + blockSize - 1) / blockSize);
+		HuffmanContainer.writeHeader(output, new File(filePath).getName(), codeLengths, fileBytes.length, blockSize, blockCount);
+		
+		ArrayDeque<ForkJoinTask<EncodedBlock>> tasks = new ArrayDeque<ForkJoinTask<EncodedBlock>>();
+		int[] blockDataSizes = new int[blockCount];
+		int[] blockChecksums = new int[blockCount];
+		long lastDataBits = 0;
+		int nextBlock = 0;
+		try {
+			for (int block = 0; block < blockCount; block++) {
+				while (nextBlock < blockCount && nextBlock - block < this.blocksInFlight()) {
+					int from = nextBlock * blockSize;
+					int to = (int) Math.min(fileBytes.length, (long) from + blockSize);
+					tasks.add(this.blockPool.submit(() -> this.encodeBlock(fileBytes, from, to, codeLengths)));
+					nextBlock++;
 				}
-				else if (code.length() == 8) {
-					int integerCode = Integer.parseInt(code, 2);
-					code = "";
-					bufferedWriter2.write((char) integerCode);
+				EncodedBlock encoded = joinBlock(tasks.poll());
+				output.write(encoded.data);
+				blockDataSizes[block] = encoded.data.length;
+				blockChecksums[block] = encoded.checksum;
+				lastDataBits = encoded.dataBits;
+			}
+		} finally {
+			for (ForkJoinTask<EncodedBlock> task: tasks) {
+				task.cancel(false);
+			}
+		}
+		int checksum = HuffmanContainer.writeBlockTable(output, blockDataSizes, blockChecksums);
+		HuffmanContainer.writeTrailer(output, lastDataBits, checksum);
+		output.flush();
+	}
+	
+	/**
+	 * encodes one block of a file, the task of writeBlocks.
+	 * @param fileBytes the unsigned bytes of the input file.
+	 * @param from the index of the first byte of the block.
+	 * @param to the index after the last byte of the block.
+	 * @param codeLengths the code length of every character.
+	 * @return the encoded block.
+	 * @throws IOException if the block is too large.
+	 */
+	private EncodedBlock encodeBlock(int[] fileBytes, int from, int to, int[] codeLengths) throws IOException {
+		long dataBits = 0;
+		byte[] original = new byte[to - from];
+		for (int i = from; i < to; i++) {
+			dataBits += codeLengths[fileBytes[i]];
+			original[i - from] = (byte) fileBytes[i];
+		}
+		CRC32 checksum = new CRC32();
+		checksum.update(original);
+		return new EncodedBlock(this.encodePackedData(fileBytes, from, to, dataBits), dataBits, (int) checksum.getValue());
+	}
+	
+	/**
+	 * returns the number of blocks that are encoded or decoded ahead of the block that is written,
+	 * twice the threads of the pool keep every thread busy while the writer waits for one block.
+	 */
+	private int blocksInFlight() {
+		return 2 * this.blockPool.getParallelism();
+	}
+	
+	/**
+	 * writes the data of a file by appending the code strings and parsing every 8 characters into a byte.
+	 * @param fileBytes the unsigned bytes of the input file.
+	 * @param output the stream to write the data to.
+	 * @throws IOException if the stream fails.
+	 */
+	private void writeStringData(int[] fileBytes, OutputStream output) throws IOException {
+		BufferedOutputStream bufferedWriter2 = new BufferedOutputStream(output);
+		
+		int index = 0;
+		String code = this.codeTable[fileBytes[index]];
+		while(index < fileBytes.length) {
+			if (code.length() < 8 && index + 1 == fileBytes.length) {
+				if (code.length() > 0) {
+					code = "**" + code;
+					for (char tempChar: code.toCharArray()) {
+						bufferedWriter2.write(tempChar);
+					}
+					break;
 				}
 				else {
-					int integerCode = Integer.parseInt(code.substring(0, 8), 2);
-					code = code.substring(8);
-					bufferedWriter2.write((char) integerCode);;
+					break;
 				}
 			}
 			
-		} catch (IOException e) {
-			e.printStackTrace();
+			if (code.length() < 8) {
+				index++;
+				code = code + this.codeTable[fileBytes[index]];
+			}
+			else if (code.length() == 8) {
+				int integerCode = Integer.parseInt(code, 2);
+				code = "";
+				bufferedWriter2.write((char) integerCode);
+			}
+			else {
+				int integerCode = Integer.parseInt(code.substring(0, 8), 2);
+				code = code.substring(8);
+				bufferedWriter2.write((char) integerCode);;
+			}
 		}
-
+		bufferedWriter2.flush();
 	}
 	
 	/**
@@ -330,25 +844,19 @@ public class HuffmanCompressor {
 				
 				String code = this.codeTable[fileBytes[currentIndex]];
 				while(currentIndex < fileBytes.length) {
+					// the marker also ends a file without bits left over, the reader looks for it to find the next file.
 					if (code.length() < 8 && fileBytes[currentIndex + 1] == 1111) {
-						if (code.length() > 0) {
-							code = "**" + code + "\n";
-							for (char tempChar: code.toCharArray()) {
-								bufferedWriter2.write(tempChar);
-							}
-							code = "==" + "\r" + "\n";
-							for (char tempChar: code.toCharArray()) {
-								bufferedWriter2.write(tempChar);
-							}
-							bufferedWriter2.close();
-							currentIndex = currentIndex + 2;
-							break;
+						code = "**" + code + "\n";
+						for (char tempChar: code.toCharArray()) {
+							bufferedWriter2.write(tempChar);
 						}
-						else {
-							bufferedWriter2.close();
-							currentIndex = currentIndex + 2;
-							break;
+						code = "==" + "\r" + "\n";
+						for (char tempChar: code.toCharArray()) {
+							bufferedWriter2.write(tempChar);
 						}
+						bufferedWriter2.close();
+						currentIndex = currentIndex + 2;
+						break;
 					}
 					
 					if (code.length() < 8) {
@@ -373,256 +881,382 @@ public class HuffmanCompressor {
 	}
 	
 	/**
-	 * used to print the decompressed file.
-	 * @param fullFileName the name of the decompressed file.
-	 * @param compressedFileData the dat of the copressed file..
+	 * writes a folder in the binary container format. the files share one code table of limited
+	 * lengths, and the data of every file starts on a byte of its own, so each file is decoded
+	 * straight from the compressed bytes without looking for a separator.
+	 * @param sourceFolder the folder.
+	 * @param fileBytes the unsigned bytes of the files, the files are seperated by 1111.
+	 * @throws IOException if the compressed folder can not be written.
 	 */
-	private void printDecompressedFile(String fullFileName, String[] compressedFileData) {
+	private void writeFolderContainer(File sourceFolder, int[] fileBytes) throws IOException {
+		int[] codeLengths = HuffmanCodeLengths.build(this.frequencyTable, HuffmanContainer.MAX_CODE_LENGTH);
+		long[] codes = HuffmanContainer.canonicalCodes(codeLengths);
+		for (int i = 0; i < codes.length; i++) {
+			this.codeBits[i] = (int) codes[i];
+			this.codeLengths[i] = codeLengths[i];
+		}
+		
+		// readFiles ends the data of every file it could read with a separator, in the order of listFiles.
+		File[] files = sourceFolder.listFiles();
+		int fileCount = 0;
+		for (int i = 0; i < fileBytes.length; i++) {
+			if (fileBytes[i] == 1111) {
+				fileCount++;
+			}
+		}
+		
+		BufferedOutputStream output = new BufferedOutputStream(new FileOutputStream(sourceFolder.getName() + "-compressed.txt"));
 		try {
-			String temp = "";
-			int index;
-			
-			String fileName = fullFileName.substring(0, fullFileName.lastIndexOf("."));
-			String fileFormat = fullFileName.substring(fullFileName.lastIndexOf("."));
-			
-			File File = new File(fileName + "-decompressed" + fileFormat);
-			FileOutputStream writer = new FileOutputStream(File);
-			BufferedOutputStream bufferedWriter = new BufferedOutputStream(writer);
-			for (int i = 0; i < compressedFileData[1].length(); i++) {
-				temp = temp +  compressedFileData[1].charAt(i);
-				
-				if ((index = this.getCharacterIndex(temp)) != -1) {
-					bufferedWriter.write((char) index);
-					temp = "";
+			HuffmanContainer.writeFolderHeader(output, sourceFolder.getName(), codeLengths, fileCount);
+			byte[] chunk = new byte[64 * 1024];
+			int from = 0;
+			for (int file = 0; file < fileCount; file++) {
+				int to = from;
+				long dataBits = 0;
+				CRC32 checksum = new CRC32();
+				int chunkSize = 0;
+				while (fileBytes[to] != 1111) {
+					dataBits += codeLengths[fileBytes[to]];
+					chunk[chunkSize++] = (byte) fileBytes[to];
+					if (chunkSize == chunk.length) {
+						checksum.update(chunk, 0, chunkSize);
+						chunkSize = 0;
+					}
+					to++;
 				}
+				checksum.update(chunk, 0, chunkSize);
+				
+				byte[] data = this.encodePackedData(fileBytes, from, to, dataBits);
+				HuffmanContainer.writeFolderEntry(output, files[file].getName(), to - from, data.length, (int) checksum.getValue());
+				output.write(data);
+				from = to + 1;
 			}
-			bufferedWriter.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+		} finally {
+			output.close();
 		}
 	}
 	
 	/**
-	 * used to print the decompressed folder.
-	 * @param folderName the name of the decompressed folder.
-	 * @param compressedFolderData the dat of the copressed folder.
+	 * used to print the decompressed files of a folder in the binary container format, every file
+	 * is checked against its checksum.
+	 * @param compressedFolderData the compressed folder.
+	 * @throws IOException if the container is not valid or a file can not be written.
 	 */
-	private void printDecompressedFolder(String folderName, String[] compressedFolderData) {
-		folderName = folderName + "-decompressed";
-		File folder = new File(folderName);
+	private void printDecompressedFolderContainer(ByteBuffer compressedFolderData) throws IOException {
+		HuffmanContainer folderContainer = HuffmanContainer.readFolder(compressedFolderData);
+		File folder = new File(folderContainer.fileName + "-decompressed");
 		folder.mkdir();
+		HuffmanDecoder decoder = this.createDecoder(folderContainer);
 		
-		String[] fileName = compressedFolderData[1].split(",");
-		String[] fileData = compressedFolderData[2].split(",");
-		int filesCount = fileName.length;
+		for (int i = 0; i < folderContainer.fileCount; i++) {
+			HuffmanContainer entry = HuffmanContainer.readFolderEntry(compressedFolderData);
+			CheckedOutputStream writer = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(new File(folder, entry.fileName))), new CRC32());
+			try {
+				decoder.decode(compressedFolderData, entry.dataSize, "", entry.originalLength, writer);
+			} finally {
+				writer.close();
+			}
+			if (writer.getChecksum().getValue() != (entry.checksum & 0xFFFFFFFFL)) {
+				throw new IOException(entry.fileName + " does not match the checksum of the original file");
+			}
+			compressedFolderData.position(compressedFolderData.position() + entry.dataSize);
+		}
+	}
+	
+	/**
+	 * used to print the decompressed file of a binary container, the decompressed data is checked
+	 * against the checksum of the original file, or of every block for a file with blocks.
+	 * @param compressedFileData the compressed file.
+	 * @throws IOException if the container is not valid or the file can not be written.
+	 */
+	private void printDecompressedContainer(ByteBuffer compressedFileData) throws IOException {
+		HuffmanContainer container = HuffmanContainer.read(compressedFileData);
 		
-		for (int i = 0; i < filesCount; i++) {
+		String fullFileName = container.fileName;
+		String fileName = fullFileName.substring(0, fullFileName.lastIndexOf("."));
+		String fileFormat = fullFileName.substring(fullFileName.lastIndexOf("."));
+		
+		if (container.blockDataSizes != null) {
+			FileOutputStream writer = new FileOutputStream(fileName + "-decompressed" + fileFormat);
 			try {
-				String temp = "";
-				int index;
-				
-				File File = new File(folderName + "\\" + fileName[i]);
-				FileOutputStream writer = new FileOutputStream(File);
-				BufferedOutputStream bufferedWriter = new BufferedOutputStream(writer);
-				for (int j = 0; j < fileData[i].length(); j++) {
-					temp = temp +  fileData[i].charAt(j);
-					
-					if ((index = this.getCharacterIndex(temp)) != -1) {
-						bufferedWriter.write((char) index);
-						temp = "";
-					}
+				this.printDecompressedBlocks(container, compressedFileData, writer);
+			} finally {
+				writer.close();
+			}
+			return;
+		}
+		
+		CheckedOutputStream writer = new CheckedOutputStream(new FileOutputStream(fileName + "-decompressed" + fileFormat), new CRC32());
+		try {
+			this.createDecoder(container).decode(compressedFileData, container.dataSize, "", container.originalLength, writer);
+		} finally {
+			writer.close();
+		}
+		if (writer.getChecksum().getValue() != (container.checksum & 0xFFFFFFFFL)) {
+			throw new IOException("the decompressed file does not match the checksum of the original file");
+		}
+	}
+	
+	/**
+	 * decodes the blocks of a container in parallel and writes them in order as their tasks finish.
+	 * every task decodes its block with a decoder of its own and checks it against the checksum
+	 * of the block. only blocksInFlight() blocks are decoded ahead of the one that is written.
+	 * @param container the container.
+	 * @param compressedFileData the compressed file, from the first data byte.
+	 * @param writer the stream to write the decompressed file to.
+	 * @throws IOException if a block is not valid or the file can not be written.
+	 */
+	private void printDecompressedBlocks(HuffmanContainer container, ByteBuffer compressedFileData, OutputStream writer) throws IOException {
+		int blockCount = container.blockDataSizes.length;
+		ArrayDeque<ForkJoinTask<byte[]>> tasks = new ArrayDeque<ForkJoinTask<byte[]>>();
+		int position = compressedFileData.position();
+		int nextBlock = 0;
+		try {
+			for (int block = 0; block < blockCount; block++) {
+				while (nextBlock < blockCount && nextBlock - block < this.blocksInFlight()) {
+					int index = nextBlock;
+					ByteBuffer blockData = compressedFileData.duplicate();
+					blockData.position(position);
+					position += container.blockDataSizes[index];
+					tasks.add(this.blockPool.submit(() -> this.decodeBlock(container, blockData, index)));
+					nextBlock++;
 				}
-				
-				bufferedWriter.close();
-			} catch (IOException e) {
-				e.printStackTrace();
+				writer.write(joinBlock(tasks.poll()));
+			}
+		} finally {
+			for (ForkJoinTask<byte[]> task: tasks) {
+				task.cancel(false);
 			}
 		}
 	}
 	
 	/**
-	 * used to read the data of the compressed file.
-	 * @param filePath the path of the compressed file.
+	 * decodes one block of a container and checks its checksum, the task of printDecompressedBlocks.
+	 * @param container the container.
+	 * @param blockData the compressed file, from the first byte of the block.
+	 * @param index the index of the block.
+	 * @return the decoded block.
+	 * @throws IOException if the block is not valid.
 	 */
-	private String[] readCompressedFile(String filePath) {
-		int startIndex = 0, endIndex = 0;
-		String encodedText = "";
-		String extraCode = "";
-		StringBuffer buffer = new StringBuffer();
-		String[] result = new String[3];
-		CharBuffer charBuffer = null;
+	private byte[] decodeBlock(HuffmanContainer container, ByteBuffer blockData, int index) throws IOException {
+		int blockLength = (int) Math.min(container.blockSize, container.originalLength - (long) index * container.blockSize);
+		ByteArrayOutputStream output = new ByteArrayOutputStream(blockLength);
+		this.createDecoder(container).decode(blockData, container.blockDataSizes[index], "", blockLength, output);
+		byte[] decoded = output.toByteArray();
+		CRC32 checksum = new CRC32();
+		checksum.update(decoded);
+		if ((int) checksum.getValue() != container.blockChecksums[index]) {
+			throw new IOException("block " + index + " does not match the checksum of the original file");
+		}
+		return decoded;
+	}
+	
+	/**
+	 * waits for the task of a block.
+	 * @param task the task.
+	 * @return the result of the task.
+	 * @throws IOException if the task failed, the pool wraps the exception of a task and the error
+	 * of the block is the IOException under it.
+	 */
+	private static <T> T joinBlock(ForkJoinTask<T> task) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			throw new IOException("the block was interrupted", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			while (cause != null && !(cause instanceof IOException)) {
+				cause = cause.getCause();
+			}
+			throw cause != null ? (IOException) cause : new IOException(e.getCause());
+		}
+	}
+	
+	/**
+	 * creates a decoder for the codes of a container, reading the container checked that they
+	 * fit a single table.
+	 * @param container the container.
+	 * @return the decoder.
+	 * @throws IOException if the code lengths are not a complete prefix code.
+	 */
+	private HuffmanDecoder createDecoder(HuffmanContainer container) throws IOException {
+		long[] codes = HuffmanContainer.canonicalCodes(container.codeLengths);
+		int[] codeBits = new int[codes.length];
+		for (int i = 0; i < codes.length; i++) {
+			codeBits[i] = (int) codes[i];
+		}
+		try {
+			return new HuffmanDecoder(codeBits, container.codeLengths);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("corrupt container", e);
+		}
+	}
+	
+	/**
+	 * used to print the decompressed file. the length of the data follows from the frequencies
+	 * and the lengths of the codes, so the end of the data is known without looking for the '**'
+	 * that starts the bits of the last byte.
+	 * @param fullFileName the name of the decompressed file.
+	 * @param compressedFileData the data of the compressed file, from the first data byte.
+	 * @throws IOException if the data is not valid or the file can not be written.
+	 */
+	private void printDecompressedFile(String fullFileName, ByteBuffer compressedFileData) throws IOException {
+		long characters = 0;
+		long dataBits = 0;
+		for (int i = 0; i < this.frequencyTable.length; i++) {
+			characters += this.frequencyTable[i];
+			dataBits += (long) this.frequencyTable[i] * this.codeTable[i].length();
+		}
 		
+		int byteCount = (int) (dataBits >>> 3);
+		int extraBits = (int) (dataBits & 7);
+		if (compressedFileData.remaining() < byteCount + (extraBits > 0 ? 2 + extraBits : 0)) {
+			throw new IOException("the compressed file is truncated");
+		}
+		StringBuilder extraCode = new StringBuilder();
+		for (int i = 0; i < extraBits; i++) {
+			extraCode.append((char) compressedFileData.get(compressedFileData.position() + byteCount + 2 + i));
+		}
+		
+		String fileName = fullFileName.substring(0, fullFileName.lastIndexOf("."));
+		String fileFormat = fullFileName.substring(fullFileName.lastIndexOf("."));
+		
+		FileOutputStream writer = new FileOutputStream(fileName + "-decompressed" + fileFormat);
 		try {
-			File file = new File(filePath);
-			FileReader fileReader = new FileReader(file);
-			BufferedReader bufferedReader = new BufferedReader(fileReader);
-			
-			String fileName = bufferedReader.readLine();
-			String fileFormat = bufferedReader.readLine();
-			fileName = fileName + fileFormat;
-			result[0] = fileName;
-			
-			String line;
-			while (!(line = bufferedReader.readLine()).equals("--")) {
-				String[] tokens = line.split(" ");
-				int index = Integer.parseInt(tokens[0]);
-				this.frequencyTable[index] = Integer.parseInt(tokens[1]);
-				this.codeTable[index] = tokens[2];
+			new HuffmanDecoder(this.codeTable, this.frequencyTable).decode(compressedFileData, byteCount, extraCode, characters, writer);
+		} finally {
+			writer.close();
+		}
+	}
+	
+	/**
+	 * used to print the decompressed folder. the data of every file is decoded straight from the
+	 * compressed bytes, the data of a file ends with '**', the bits of its last byte as '0' and '1'
+	 * characters and a line of '=='.
+	 * @param compressedFolderData the data of the compressed folder.
+	 * @throws IOException if the folder is not valid or a file can not be written.
+	 */
+	private void printDecompressedFolder(ByteBuffer compressedFolderData) throws IOException {
+		String[] header = this.readCompressedFolder(compressedFolderData);
+		File folder = new File(header[0] + "-decompressed");
+		folder.mkdir();
+		
+		int filesCount = Integer.parseInt(header[1]);
+		HuffmanDecoder decoder = new HuffmanDecoder(this.codeTable, this.frequencyTable);
+		
+		for (int i = 0; i < filesCount; i++) {
+			String fileName = readLine(compressedFolderData) + readLine(compressedFolderData);
+			int dataStart = compressedFolderData.position();
+			int dataEnd = findFolderDataEnd(compressedFolderData, dataStart);
+			if (dataEnd < 0) {
+				throw new IOException("the compressed folder is truncated");
 			}
+			compressedFolderData.position(dataEnd + 2);
+			String extraCode = readLine(compressedFolderData);
+			readLine(compressedFolderData);
 			
-			bufferedReader.close();
-			
-			FileInputStream temp = new FileInputStream(filePath);
-			FileChannel channel = temp.getChannel();
-			
-
-			MappedByteBuffer mappedByteBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
-			if (mappedByteBuffer != null) {
-		        charBuffer = Charset.forName("ISO-8859-1").decode(mappedByteBuffer);
-		    }
-			
-			for (int i = 0; i < charBuffer.length(); i++) {
-				if (charBuffer.charAt(i) == '-') {
-					startIndex = i + 4;
-					break;
-				}
+			ByteBuffer fileData = compressedFolderData.duplicate();
+			fileData.position(dataStart);
+			BufferedOutputStream writer = new BufferedOutputStream(new FileOutputStream(new File(folder, fileName)));
+			try {
+				decoder.decode(fileData, dataEnd - dataStart, extraCode, -1, writer);
+			} finally {
+				writer.close();
 			}
-			
-			for (int i = charBuffer.length() - 1; i > 0; i--) {
-				if (charBuffer.charAt(i) == '*') {
-					endIndex = i - 2;
-					break;
-				}
-				else {
-					extraCode = charBuffer.charAt(i) + extraCode;
-				}
+		}
+	}
+	
+	/**
+	 * finds the end of the data of a file in a compressed folder, the '**' that is followed by at
+	 * most 7 bits, the end of the line and '=='.
+	 * @param buffer the compressed folder.
+	 * @param start the index of the first data byte of the file.
+	 * @return the index of the '**', or -1 if the data does not end.
+	 */
+	private static int findFolderDataEnd(ByteBuffer buffer, int start) {
+		for (int i = start; i + 4 < buffer.limit(); i++) {
+			if (buffer.get(i) != '*' || buffer.get(i + 1) != '*') {
+				continue;
 			}
-			
-			channel.close();
-			temp.close();
-
-			String tempCode = "";
-			for (int i = startIndex; i <= endIndex; i++) {
-				tempCode = Integer.toBinaryString(charBuffer.charAt(i));
-				while (tempCode.length() < 8) {
-					tempCode = "0" + tempCode;
-				}
-				buffer.append(tempCode);
+			int end = i + 2;
+			while (end < buffer.limit() && end - i - 2 < 8 && (buffer.get(end) == '0' || buffer.get(end) == '1')) {
+				end++;
+			}
+			if (end + 2 < buffer.limit() && buffer.get(end) == '\n' && buffer.get(end + 1) == '=' && buffer.get(end + 2) == '=') {
+				return i;
 			}
-			
-		} catch (FileNotFoundException e1) {
-			e1.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
-		
-		encodedText = buffer.toString();
-		encodedText = encodedText + extraCode;
-		result[1] = encodedText;
-		return result;
+		return -1;
 	}
 	
 	/**
-	 * used to read the data of the compressed folder from file.
-	 * @param filePath the path of the compressed file.
+	 * used to read the header of the compressed file, fills the frequency and the code tables.
+	 * @param compressedFileData the compressed file, its position is left at the first data byte.
+	 * @return the name of the file with its extension.
 	 */
-	private String[] readCompressedFolder(String filePath) {
-		int startIndex = 0, endIndex = 0;
-		String extraCode = "";
-		StringBuffer buffer = new StringBuffer();
-		StringBuffer tempBuffer = new StringBuffer();
-		String[] result = new String[3];
-		CharBuffer charBuffer = null;
+	private String readCompressedFile(ByteBuffer compressedFileData) {
+		String fileName = readLine(compressedFileData);
+		String fileFormat = readLine(compressedFileData);
 		
-		try {
-			File file = new File(filePath);
-			FileReader fileReader = new FileReader(file);
-			BufferedReader bufferedReader = new BufferedReader(fileReader);
-			
-			String folderName = bufferedReader.readLine();
-			int filesCount = Integer.parseInt(bufferedReader.readLine());
-			result[0] = folderName;
-			
-			String line;
-			while (!(line = bufferedReader.readLine()).equals("==")) {
-				String[] tokens = line.split(" ");
-				int index = Integer.parseInt(tokens[0]);
-				this.frequencyTable[index] = Integer.parseInt(tokens[1]);
-				this.codeTable[index] = tokens[2];
+		// the code of a file with a single character is empty.
+		String line;
+		while (!(line = readLine(compressedFileData)).equals("--")) {
+			String[] tokens = line.split(" ");
+			int index = Integer.parseInt(tokens[0]);
+			this.frequencyTable[index] = Integer.parseInt(tokens[1]);
+			this.codeTable[index] = tokens.length > 2 ? tokens[2] : "";
+		}
+		
+		return fileName + fileFormat;
+	}
+	
+	/**
+	 * reads a line of ISO-8859-1 characters, the line ends with "\n" or "\r\n".
+	 * @param buffer the buffer to read from, its position is left after the end of the line.
+	 * @return the line without its end.
+	 */
+	private static String readLine(ByteBuffer buffer) {
+		StringBuilder line = new StringBuilder();
+		while (buffer.hasRemaining()) {
+			char character = (char) (buffer.get() & 0xFF);
+			if (character == '\n') {
+				break;
 			}
-			
-			bufferedReader.close();
-			FileInputStream temp = new FileInputStream(filePath);
-			FileChannel channel = temp.getChannel();
-			
-			
-			MappedByteBuffer mappedByteBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
-			if (mappedByteBuffer != null) {
-		        charBuffer = Charset.forName("ISO-8859-1").decode(mappedByteBuffer);
+			line.append(character);
+		}
+		
+		if (line.length() > 0 && line.charAt(line.length() - 1) == '\r') {
+			line.setLength(line.length() - 1);
+		}
+		return line.toString();
+	}
+	
+	/**
+	 * used to read the header of the compressed folder, fills the frequency and the code tables.
+	 * @param compressedFolderData the compressed folder, its position is left at the first file.
+	 * @return the name of the folder and the number of files.
+	 * @throws IOException if the header does not end.
+	 */
+	private String[] readCompressedFolder(ByteBuffer compressedFolderData) throws IOException {
+		String[] result = new String[2];
+		result[0] = readLine(compressedFolderData);
+		result[1] = readLine(compressedFolderData);
+		
+		// '==' seperates the table from the data of the files.
+		while (true) {
+			if (!compressedFolderData.hasRemaining()) {
+				throw new IOException("the compressed folder is truncated");
 			}
-			
-			channel.close();
-			temp.close();
-
-			for (int i = 0; i < filesCount; i++) {
-				for (int j = startIndex; j < charBuffer.length(); j++) {
-					if (charBuffer.get(j) == '=' && charBuffer.get(j + 1) == '=') {
-						startIndex = j + 4;
-						break;
-					}
-				}
-				
-				while (charBuffer.get(startIndex) != '\r') {
-					tempBuffer.append(charBuffer.get(startIndex));
-					startIndex++;
-				}
-				startIndex = startIndex + 2;
-				while (charBuffer.get(startIndex) != '\r') {
-					tempBuffer.append(charBuffer.get(startIndex));
-					startIndex++;
-				}
-				startIndex = startIndex + 2;
-				
-				if (i + 1 != filesCount) {
-					tempBuffer.append(',');
-				}
-				
-				endIndex = endIndex + 3;
-				for (int j = endIndex; j < charBuffer.length(); j++) {
-					if (charBuffer.get(j) == '*' && charBuffer.get(j + 1) == '*') {
-						endIndex = j - 1;
-						break;
-					}
-				}
-				
-				int extraCodeIndex = endIndex + 3;
-				while (charBuffer.get(extraCodeIndex) == '0' || charBuffer.get(extraCodeIndex) == '1') {
-					extraCode = charBuffer.charAt(extraCodeIndex) + extraCode;
-					extraCodeIndex++;
-				}
-				
-				String tempCode = "";
-				for (int j = startIndex; j <= endIndex; j++) {
-					tempCode = Integer.toBinaryString(charBuffer.charAt(j));
-					while (tempCode.length() < 8) {
-						tempCode = "0" + tempCode;
-					}
-					buffer.append(tempCode);
-				}
-				
-				buffer.append(extraCode);
-				if (i + 1 != filesCount) {
-					buffer.append(',');
-				}
+			String line = readLine(compressedFolderData);
+			if (line.equals("==")) {
+				break;
 			}
-		} catch (FileNotFoundException e1) {
-			e1.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
+			String[] tokens = line.split(" ");
+			int index = Integer.parseInt(tokens[0]);
+			this.frequencyTable[index] = Integer.parseInt(tokens[1]);
+			this.codeTable[index] = tokens[2];
 		}
 		
-		result[1] = tempBuffer.toString();
-		result[2] = buffer.toString();
 		return result;
 	}
 	
@@ -679,5 +1313,121 @@ public class HuffmanCompressor {
 		
 		return intArray;
 	}
+	
+	/**
+	 * the encoded data of a block.
+	 */
+	private static class EncodedBlock {
+		final byte[] data;
+		final long dataBits;
+		final int checksum;     // the CRC32 of the original bytes of the block.
+		
+		EncodedBlock(byte[] data, long dataBits, int checksum) {
+			this.data = data;
+			this.dataBits = dataBits;
+			this.checksum = checksum;
+		}
+	}
+	
+	/**
+	 * encodes the chunks of a file with the packed codes straight into a stream, like
+	 * encodePackedData does for a file in memory. it counts the characters and takes the checksum
+	 * of the chunks it encodes, finish() ends a block on a byte of its own.
+	 */
+	private static class PackedStreamEncoder {
+		final int[] codeBits;
+		final int[] codeLengths;
+		final OutputStream output;
+		final long[] counts = new long[256];   // the characters of every chunk encoded so far.
+		final byte[] buffer = new byte[64 * 1024];
+		final CRC32 checksum = new CRC32();
+		int position = 0;
+		long bitBuffer = 0;    // the last bitCount bits are waiting to be written.
+		int bitCount = 0;
+		long dataBits = 0;     // the bits of the block.
+		
+		PackedStreamEncoder(int[] codeBits, int[] codeLengths, OutputStream output) {
+			this.codeBits = codeBits;
+			this.codeLengths = codeLengths;
+			this.output = output;
+		}
+		
+		/**
+		 * encodes a chunk of the file.
+		 * @param chunk the chunk.
+		 * @param length the number of bytes in the chunk.
+		 * @throws IOException if a character has no code or the stream fails.
+		 */
+		void encode(byte[] chunk, int length) throws IOException {
+			this.checksum.update(chunk, 0, length);
+			int[] codeBits = this.codeBits;
+			int[] codeLengths = this.codeLengths;
+			byte[] buffer = this.buffer;
+			long bitBuffer = this.bitBuffer;
+			int bitCount = this.bitCount;
+			int position = this.position;
+			for (int i = 0; i < length; i++) {
+				int character = chunk[i] & 0xFF;
+				int codeLength = codeLengths[character];
+				if (codeLength == 0) {
+					throw new IOException("the file changed while it was compressed");
+				}
+				this.counts[character]++;
+				this.dataBits += codeLength;
+				bitBuffer = (bitBuffer << codeLength) | (codeBits[character] & 0xFFFFFFFFL);
+				bitCount += codeLength;
+				if (bitCount >= 32) {
+					if (position + 4 > buffer.length) {
+						this.output.write(buffer, 0, position);
+						position = 0;
+					}
+					bitCount -= 32;
+					int word = (int) (bitBuffer >>> bitCount);
+					buffer[position] = (byte) (word >>> 24);
+					buffer[position + 1] = (byte) (word >>> 16);
+					buffer[position + 2] = (byte) (word >>> 8);
+					buffer[position + 3] = (byte) word;
+					position += 4;
+				}
+			}
+			this.bitBuffer = bitBuffer;
+			this.bitCount = bitCount;
+			this.position = position;
+		}
+		
+		/**
+		 * returns the checksum of the chunks since the last finish().
+		 */
+		int getChecksum() {
+			return (int) this.checksum.getValue();
+		}
+		
+		/**
+		 * writes the bits that are waiting, the last byte is padded with 0 bits, and starts a new block.
+		 * @return the number of data bits of the block.
+		 * @throws IOException if the stream fails.
+		 */
+		long finish() throws IOException {
+			if (this.position + 8 > this.buffer.length) {
+				this.output.write(this.buffer, 0, this.position);
+				this.position = 0;
+			}
+			while (this.bitCount >= 8) {
+				this.bitCount -= 8;
+				this.buffer[this.position++] = (byte) (this.bitBuffer >>> this.bitCount);
+			}
+			if (this.bitCount > 0) {
+				this.buffer[this.position++] = (byte) (this.bitBuffer << (8 - this.bitCount));
+			}
+			this.output.write(this.buffer, 0, this.position);
+			this.position = 0;
+			this.bitBuffer = 0;
+			this.bitCount = 0;
+			this.checksum.reset();
+			long dataBits = this.dataBits;
+			this.dataBits = 0;
+			return dataBits;
+		}
+	}
 }
 
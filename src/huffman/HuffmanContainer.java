@@ -0,0 +1,425 @@
+package huffman;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+/**
+ * the binary format of a compressed file. all numbers are big-endian.
+ * header: magic (4 bytes), version (1 byte), flags (1 byte), the length of the file name (2 bytes),
+ * the file name in UTF-8, the number of code lengths (2 bytes), the code lengths, the length of
+ * the original file (8 bytes).
+ * the code lengths are either one byte for each of the characters 0 to count - 1, or when
+ * FLAG_SPARSE_LENGTHS is set a (character, length) byte pair for each character that occurs, which
+ * is smaller for files with few characters. the codes are canonical, so the lengths are enough to
+ * rebuild them, and at most MAX_CODE_LENGTH bits long. lengths that are longer or that do not fit
+ * a prefix code (their Kraft sum is more than 1) make the file a corrupt container.
+ * the data follows the header, the last byte is padded with 0 bits.
+ * trailer: the number of data bits in the last data byte (1 byte, 0 without data) and the CRC32 of
+ * the original file (4 bytes).
+ * version 2 splits the file into blocks of the same code table that are decoded independently.
+ * its header ends with the size of a block and the number of blocks (4 bytes each), every block
+ * starts on a byte of its own, and the data is followed by a block table of the compressed size
+ * and the CRC32 of every block (4 bytes each). the checksum of the trailer is the CRC32 of the
+ * block table, so the blocks can be checked in parallel.
+ * version 3 holds the files of a folder with one code table. its header has the name of the
+ * folder in place of the file name and ends with the number of files (4 bytes) instead of the
+ * length of the original file. every file follows as an entry: the length of its name (2 bytes),
+ * the name in UTF-8, the length of the original file (8 bytes), the number of data bytes (4 bytes),
+ * the CRC32 of the original file (4 bytes) and the data. a folder has no trailer.
+ * the header is read from the front and the trailer from the back, so no byte of the data has to
+ * be searched for.
+ */
+public class HuffmanContainer {
+	static final byte[] MAGIC = {(byte) 0x89, 'H', 'U', 'F'};
+	static final int VERSION = 1;
+	static final int BLOCK_VERSION = 2;
+	static final int FOLDER_VERSION = 3;
+	static final int FLAG_SPARSE_LENGTHS = 0x01;
+	static final int TRAILER_SIZE = 5;
+	static final int MAX_CODE_LENGTH = 15;   // the longest code that is written and read.
+	static final int FOLDER_ENTRY_SIZE = 18;   // the bytes of a folder entry without its name and data.
+
+	String fileName;
+	int[] codeLengths = new int[256];
+	long originalLength;
+	int dataSize;
+	int checksum;
+	int blockSize;            // the number of original bytes in every block but the last, 0 without blocks.
+	int[] blockDataSizes;     // the number of compressed bytes of every block, null without blocks.
+	int[] blockChecksums;
+	int fileCount;            // the number of files of a folder.
+
+	/**
+	 * returns true if a buffer starts with the magic of the container, the legacy text format
+	 * starts with the file name instead.
+	 * @param buffer the compressed file, from its position.
+	 */
+	static boolean isContainer(ByteBuffer buffer) {
+		if (buffer.remaining() < MAGIC.length) {
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (buffer.get(buffer.position() + i) != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * writes the header of a compressed file.
+	 * @param output the stream to write to.
+	 * @param fileName the name of the original file with its extension.
+	 * @param codeLengths the code length of every character, 0 for characters that do not occur.
+	 * @param originalLength the length of the original file.
+	 * @param blockSize the number of original bytes in a block, 0 to write a file without blocks.
+	 * @param blockCount the number of blocks.
+	 * @throws IOException if the stream fails.
+	 */
+	static void writeHeader(OutputStream output, String fileName, int[] codeLengths, long originalLength,
+			int blockSize, int blockCount) throws IOException {
+		DataOutputStream header = new DataOutputStream(output);
+		writeStart(header, blockSize > 0 ? BLOCK_VERSION : VERSION, fileName, codeLengths);
+		header.writeLong(originalLength);
+		if (blockSize > 0) {
+			header.writeInt(blockSize);
+			header.writeInt(blockCount);
+		}
+		header.flush();
+	}
+
+	/**
+	 * writes the header of a compressed folder.
+	 * @param output the stream to write to.
+	 * @param folderName the name of the folder.
+	 * @param codeLengths the code length of every character of all the files.
+	 * @param fileCount the number of files that follow.
+	 * @throws IOException if the stream fails.
+	 */
+	static void writeFolderHeader(OutputStream output, String folderName, int[] codeLengths, int fileCount) throws IOException {
+		DataOutputStream header = new DataOutputStream(output);
+		writeStart(header, FOLDER_VERSION, folderName, codeLengths);
+		header.writeInt(fileCount);
+		header.flush();
+	}
+
+	/**
+	 * writes the entry of a file in a compressed folder, the data of the file follows it.
+	 * @param output the stream to write to.
+	 * @param fileName the name of the file with its extension.
+	 * @param originalLength the length of the original file.
+	 * @param dataSize the number of data bytes.
+	 * @param checksum the CRC32 of the original file.
+	 * @throws IOException if the stream fails.
+	 */
+	static void writeFolderEntry(OutputStream output, String fileName, long originalLength, int dataSize, int checksum) throws IOException {
+		byte[] name = fileName.getBytes(StandardCharsets.UTF_8);
+		DataOutputStream entry = new DataOutputStream(output);
+		entry.writeShort(name.length);
+		entry.write(name);
+		entry.writeLong(originalLength);
+		entry.writeInt(dataSize);
+		entry.writeInt(checksum);
+		entry.flush();
+	}
+
+	/**
+	 * writes the part of the header that every version starts with: the magic, the version, the
+	 * flags, the name and the code lengths.
+	 */
+	private static void writeStart(DataOutputStream header, int version, String name, int[] codeLengths) throws IOException {
+		int denseCount = 0;
+		int sparseCount = 0;
+		for (int i = 0; i < codeLengths.length; i++) {
+			if (codeLengths[i] > 0) {
+				denseCount = i + 1;
+				sparseCount++;
+			}
+		}
+		boolean sparse = 2 * sparseCount < denseCount;
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+		header.write(MAGIC);
+		header.writeByte(version);
+		header.writeByte(sparse ? FLAG_SPARSE_LENGTHS : 0);
+		header.writeShort(nameBytes.length);
+		header.write(nameBytes);
+		header.writeShort(sparse ? sparseCount : denseCount);
+		for (int i = 0; i < denseCount; i++) {
+			if (!sparse) {
+				header.writeByte(codeLengths[i]);
+			}
+			else if (codeLengths[i] > 0) {
+				header.writeByte(i);
+				header.writeByte(codeLengths[i]);
+			}
+		}
+	}
+
+	/**
+	 * writes the block table of a file with blocks.
+	 * @param output the stream to write to.
+	 * @param blockDataSizes the number of compressed bytes of every block.
+	 * @param blockChecksums the CRC32 of the original bytes of every block.
+	 * @return the CRC32 of the block table, which is the checksum of the trailer.
+	 * @throws IOException if the stream fails.
+	 */
+	static int writeBlockTable(OutputStream output, int[] blockDataSizes, int[] blockChecksums) throws IOException {
+		ByteBuffer table = ByteBuffer.allocate(8 * blockDataSizes.length);
+		for (int i = 0; i < blockDataSizes.length; i++) {
+			table.putInt(blockDataSizes[i]);
+			table.putInt(blockChecksums[i]);
+		}
+		CRC32 checksum = new CRC32();
+		checksum.update(table.array());
+		output.write(table.array());
+		return (int) checksum.getValue();
+	}
+
+	/**
+	 * writes the trailer of a compressed file.
+	 * @param output the stream to write to.
+	 * @param dataBits the number of data bits, without the padding of the last byte.
+	 * @param checksum the CRC32 of the original file.
+	 * @throws IOException if the stream fails.
+	 */
+	static void writeTrailer(OutputStream output, long dataBits, int checksum) throws IOException {
+		DataOutputStream trailer = new DataOutputStream(output);
+		trailer.writeByte(dataBits == 0 ? 0 : (int) ((dataBits - 1) % 8 + 1));
+		trailer.writeInt(checksum);
+		trailer.flush();
+	}
+
+	/**
+	 * reads the header and the trailer of a compressed file.
+	 * @param buffer the compressed file, its position is left at the first data byte.
+	 * @return the container with everything but the data.
+	 * @throws IOException if the file is not a container of a known version or is truncated.
+	 */
+	static HuffmanContainer read(ByteBuffer buffer) throws IOException {
+		HuffmanContainer container = new HuffmanContainer();
+		try {
+			int version = container.readStart(buffer);
+			if (version != VERSION && version != BLOCK_VERSION) {
+				throw new IOException("unknown version " + version + " of the compressed file");
+			}
+			container.originalLength = buffer.getLong();
+			if (container.originalLength < 0) {
+				throw new IOException("corrupt container");
+			}
+			int tableSize = 0;
+			if (version == BLOCK_VERSION) {
+				container.readBlockTable(buffer);
+				tableSize = 8 * container.blockDataSizes.length;
+			}
+
+			int lastByteBits = buffer.get(buffer.limit() - TRAILER_SIZE) & 0xFF;
+			container.checksum = buffer.getInt(buffer.limit() - 4);
+			container.dataSize = buffer.remaining() - TRAILER_SIZE - tableSize;
+			if (container.dataSize < 0 || lastByteBits > 8 || (lastByteBits == 0) != (container.dataSize == 0)) {
+				throw new IOException("the compressed file is truncated");
+			}
+			if (container.blockDataSizes != null) {
+				long blockData = 0;
+				for (int size: container.blockDataSizes) {
+					blockData += size;
+				}
+				if (blockData != container.dataSize) {
+					throw new IOException("the block table does not match the data of the compressed file");
+				}
+			}
+			// every character has a code of at least one bit, so the data bounds the original length.
+			if (container.originalLength > 8L * container.dataSize) {
+				throw new IOException("corrupt container");
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("the compressed file is truncated", e);
+		}
+		return container;
+	}
+
+	/**
+	 * reads the header of a compressed folder.
+	 * @param buffer the compressed folder, its position is left at the first entry.
+	 * @return the container with the name of the folder, the code lengths and the number of files.
+	 * @throws IOException if the file is not a compressed folder or is truncated.
+	 */
+	static HuffmanContainer readFolder(ByteBuffer buffer) throws IOException {
+		HuffmanContainer container = new HuffmanContainer();
+		try {
+			int version = container.readStart(buffer);
+			if (version != FOLDER_VERSION) {
+				throw new IOException("the compressed file is not a compressed folder");
+			}
+			container.fileCount = buffer.getInt();
+			if (container.fileCount < 0 || container.fileCount > buffer.remaining() / FOLDER_ENTRY_SIZE) {
+				throw new IOException("corrupt container");
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("the compressed folder is truncated", e);
+		}
+		return container;
+	}
+
+	/**
+	 * reads the entry of a file in a compressed folder.
+	 * @param buffer the compressed folder, from the entry. its position is left at the first data byte.
+	 * @return the container with the name, the length, the data size and the checksum of the file.
+	 * @throws IOException if the entry is truncated.
+	 */
+	static HuffmanContainer readFolderEntry(ByteBuffer buffer) throws IOException {
+		HuffmanContainer container = new HuffmanContainer();
+		try {
+			container.fileName = readName(buffer);
+			container.originalLength = buffer.getLong();
+			container.dataSize = buffer.getInt();
+			container.checksum = buffer.getInt();
+			if (container.dataSize < 0 || container.dataSize > buffer.remaining()) {
+				throw new IOException("the compressed folder is truncated");
+			}
+			if (container.originalLength < 0 || container.originalLength > 8L * container.dataSize) {
+				throw new IOException("corrupt container");
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("the compressed folder is truncated", e);
+		}
+		return container;
+	}
+
+	/**
+	 * reads the part of the header that every version starts with.
+	 * @param buffer the compressed file, its position is left after the code lengths.
+	 * @return the version.
+	 * @throws IOException if the file is not a container or its code lengths are not valid.
+	 */
+	private int readStart(ByteBuffer buffer) throws IOException {
+		if (!isContainer(buffer)) {
+			throw new IOException("the file is not a compressed file");
+		}
+		buffer.position(buffer.position() + MAGIC.length);
+		int version = buffer.get() & 0xFF;
+		int flags = buffer.get() & 0xFF;
+		this.fileName = readName(buffer);
+
+		int count = buffer.getShort() & 0xFFFF;
+		if (count > this.codeLengths.length) {
+			throw new IOException("corrupt container");
+		}
+		for (int i = 0; i < count; i++) {
+			if ((flags & FLAG_SPARSE_LENGTHS) != 0) {
+				int character = buffer.get() & 0xFF;
+				this.codeLengths[character] = buffer.get() & 0xFF;
+			}
+			else {
+				this.codeLengths[i] = buffer.get() & 0xFF;
+			}
+		}
+		// the lengths are checked before a decoder is built for them, the Kraft sum is counted in
+		// units of the longest code.
+		long kraftSum = 0;
+		for (int length: this.codeLengths) {
+			if (length > MAX_CODE_LENGTH) {
+				throw new IOException("corrupt container");
+			}
+			if (length > 0) {
+				kraftSum += 1L << (MAX_CODE_LENGTH - length);
+			}
+		}
+		if (kraftSum > 1L << MAX_CODE_LENGTH) {
+			throw new IOException("corrupt container");
+		}
+		return version;
+	}
+
+	/**
+	 * reads a name with its length in front of it.
+	 * @param buffer the compressed file, from the length of the name.
+	 * @return the name.
+	 * @throws IOException if the name is longer than the rest of the file.
+	 */
+	private static String readName(ByteBuffer buffer) throws IOException {
+		int length = buffer.getShort() & 0xFFFF;
+		if (length > buffer.remaining()) {
+			throw new IOException("corrupt container");
+		}
+		byte[] name = new byte[length];
+		buffer.get(name);
+		return new String(name, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * reads the block size and count at the end of the header, and the block table in front of the
+	 * trailer, the position of the buffer is left at the first data byte.
+	 * @param buffer the compressed file, from the block size.
+	 * @throws IOException if the block table does not fit the file.
+	 */
+	private void readBlockTable(ByteBuffer buffer) throws IOException {
+		this.blockSize = buffer.getInt();
+		int blockCount = buffer.getInt();
+		if (this.blockSize <= 0 || blockCount < 0 || (this.originalLength + this.blockSize - 1) / this.blockSize != blockCount
+				|| 8L * blockCount > buffer.remaining() - TRAILER_SIZE) {
+			throw new IOException("the compressed file has an invalid block table");
+		}
+
+		this.blockDataSizes = new int[blockCount];
+		this.blockChecksums = new int[blockCount];
+		int tableStart = buffer.limit() - TRAILER_SIZE - 8 * blockCount;
+		for (int i = 0; i < blockCount; i++) {
+			this.blockDataSizes[i] = buffer.getInt(tableStart + 8 * i);
+			this.blockChecksums[i] = buffer.getInt(tableStart + 8 * i + 4);
+			if (this.blockDataSizes[i] < 0) {
+				throw new IOException("the compressed file has an invalid block table");
+			}
+			// a block is decoded into an array of its original length, which its data bounds.
+			if (Math.min(this.blockSize, this.originalLength - (long) i * this.blockSize) > 8L * this.blockDataSizes[i]) {
+				throw new IOException("corrupt container");
+			}
+		}
+
+		CRC32 checksum = new CRC32();
+		ByteBuffer table = buffer.duplicate();
+		table.limit(tableStart + 8 * blockCount).position(tableStart);
+		checksum.update(table);
+		if ((int) checksum.getValue() != buffer.getInt(buffer.limit() - 4)) {
+			throw new IOException("the block table does not match its checksum");
+		}
+	}
+
+	/**
+	 * assigns the canonical codes of the given lengths. the codes of each length are consecutive
+	 * numbers in the order of the characters, and the first code of a length follows the last
+	 * code of the length before it with a 0 bit appended.
+	 * @param codeLengths the code length of every character, 0 for characters that do not occur.
+	 * @return the code of every character in the low bits, the first bit of a code is its highest bit.
+	 */
+	static long[] canonicalCodes(int[] codeLengths) {
+		int maxLength = 0;
+		for (int length: codeLengths) {
+			maxLength = Math.max(maxLength, length);
+		}
+		int[] lengthCounts = new int[maxLength + 1];
+		for (int length: codeLengths) {
+			if (length > 0) {
+				lengthCounts[length]++;
+			}
+		}
+
+		long[] nextCode = new long[maxLength + 1];
+		long code = 0;
+		for (int length = 1; length <= maxLength; length++) {
+			code = (code + lengthCounts[length - 1]) << 1;
+			nextCode[length] = code;
+		}
+
+		long[] codes = new long[codeLengths.length];
+		for (int i = 0; i < codeLengths.length; i++) {
+			if (codeLengths[i] > 0) {
+				codes[i] = nextCode[codeLengths[i]]++;
+			}
+		}
+		return codes;
+	}
+}
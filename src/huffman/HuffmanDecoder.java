@@ -0,0 +1,290 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+/**
+ * decodes huffman data with a lookup table instead of matching code strings. the codes are put
+ * in a binary trie, and a primary table indexed by the next PRIMARY_BITS bits of the data gives
+ * the character and the length of every code that is not longer than that. a longer code gives
+ * the trie node that its first PRIMARY_BITS bits lead to, and the rest of the code is walked in
+ * the trie one bit at a time. the data is read straight from the compressed bytes through a
+ * 64-bit bit buffer, followed by the bits that are written as '0' and '1' characters.
+ * canonical codes of at most MAX_TABLE_BITS bits get a single table that is as wide as the
+ * longest code instead, every code is then decoded with one lookup.
+ */
+public class HuffmanDecoder {
+	static final int PRIMARY_BITS = 11;
+	static final int MAX_TABLE_BITS = 15;
+	static final int INVALID = Integer.MIN_VALUE;   // a table entry that no code starts with.
+
+	private int[] children;       // the children of node i at 2i and 2i + 1, 0 for none and -(character + 1) for a leaf.
+	private int nodes = 1;        // node 0 is the root.
+	private int rootCharacter = -1;   // the character of a table with a single empty code.
+	private int tableBits = PRIMARY_BITS;   // the number of bits the table is indexed by.
+	private int[] table = new int[1 << PRIMARY_BITS];   // (length << 8) | character, -node or INVALID.
+
+	private ByteBuffer data;
+	private int position;
+	private int end;
+	private CharSequence tail;
+	private int tailIndex;
+	private long bitBuffer;       // the last bitCount bits are not decoded yet.
+	private int bitCount;
+
+	/**
+	 * creates a decoder for a code table.
+	 * @param codeTable the code of every character as a string of '0' and '1', empty for characters
+	 * that do not occur.
+	 * @param counts the frequency or the code length of every character, characters with 0 have no code.
+	 */
+	public HuffmanDecoder(String[] codeTable, int[] counts) {
+		int codeBits = 0;
+		for (int i = 0; i < codeTable.length; i++) {
+			if (counts[i] > 0) {
+				codeBits += codeTable[i].length();
+			}
+		}
+		this.children = new int[2 * (codeBits + 1)];
+
+		for (int i = 0; i < codeTable.length; i++) {
+			if (counts[i] == 0) {
+				continue;
+			}
+			String code = codeTable[i];
+			if (code.isEmpty()) {
+				this.rootCharacter = i;
+				continue;
+			}
+
+			int node = 0;
+			for (int j = 0; j < code.length(); j++) {
+				int slot = 2 * node + (code.charAt(j) - '0');
+				if (j + 1 == code.length()) {
+					this.children[slot] = -(i + 1);
+				}
+				else {
+					if (this.children[slot] <= 0) {
+						this.children[slot] = this.nodes++;
+					}
+					node = this.children[slot];
+				}
+			}
+		}
+
+		this.fillTable(0, 0, 0);
+	}
+
+	/**
+	 * creates a decoder for codes that are at most MAX_TABLE_BITS long. the lengths must be those
+	 * of a complete prefix code, over-subscribed lengths would give some codes the table entries
+	 * of others and under-subscribed lengths would leave entries that no code starts with. the
+	 * only incomplete code that is taken is a single code of one bit, the code of a file with one
+	 * character.
+	 * @param codeBits the code of every character in the low bits, the first bit of a code is its highest bit.
+	 * @param codeLengths the code length of every character, 0 for characters that do not occur.
+	 * @throws IllegalArgumentException if a code is too long or the lengths are not a complete prefix code.
+	 */
+	public HuffmanDecoder(int[] codeBits, int[] codeLengths) {
+		this.tableBits = 0;
+		long kraftSum = 0;   // in units of a code of MAX_TABLE_BITS bits.
+		int codeCount = 0;
+		for (int length: codeLengths) {
+			if (length < 0 || length > MAX_TABLE_BITS) {
+				throw new IllegalArgumentException("a code of " + length + " bits does not fit the table");
+			}
+			if (length > 0) {
+				kraftSum += 1L << (MAX_TABLE_BITS - length);
+				codeCount++;
+			}
+			this.tableBits = Math.max(this.tableBits, length);
+		}
+		if (kraftSum > 1L << MAX_TABLE_BITS) {
+			throw new IllegalArgumentException("the code lengths are over-subscribed");
+		}
+		if (kraftSum < 1L << MAX_TABLE_BITS && codeCount > 0 && !(codeCount == 1 && this.tableBits == 1)) {
+			throw new IllegalArgumentException("the code lengths are under-subscribed");
+		}
+		this.children = new int[2];
+		this.table = new int[1 << this.tableBits];
+		Arrays.fill(this.table, INVALID);
+
+		for (int i = 0; i < codeLengths.length; i++) {
+			int length = codeLengths[i];
+			if (length == 0) {
+				continue;
+			}
+			int first = codeBits[i] << (this.tableBits - length);
+			int count = 1 << (this.tableBits - length);
+			for (int j = first; j < first + count; j++) {
+				this.table[j] = (length << 8) | i;
+			}
+		}
+	}
+
+	/**
+	 * fills the entries of the primary table that start with the code of a trie node.
+	 * @param node the node, or the child value of a leaf.
+	 * @param depth the length of the code that leads to the node.
+	 * @param code the code that leads to the node.
+	 */
+	private void fillTable(int node, int depth, int code) {
+		int first = code << (PRIMARY_BITS - depth);
+		int count = 1 << (PRIMARY_BITS - depth);
+
+		if (node < 0) {
+			int entry = (depth << 8) | (-node - 1);
+			for (int i = first; i < first + count; i++) {
+				this.table[i] = entry;
+			}
+		}
+		else if (node == 0 && depth > 0) {
+			for (int i = first; i < first + count; i++) {
+				this.table[i] = INVALID;
+			}
+		}
+		else if (depth == PRIMARY_BITS) {
+			this.table[code] = -node;
+		}
+		else {
+			this.fillTable(this.children[2 * node], depth + 1, code << 1);
+			this.fillTable(this.children[2 * node + 1], depth + 1, (code << 1) | 1);
+		}
+	}
+
+	/**
+	 * decodes data that is stored as bytes followed by bits written as characters.
+	 * @param data the buffer that holds the data bytes, from its position.
+	 * @param byteCount the number of data bytes.
+	 * @param tail the bits after the data bytes as '0' and '1' characters, may be empty.
+	 * @param characters the number of characters to decode, or -1 to decode until the data ends.
+	 * @param output the stream to write the characters to.
+	 * @return the number of decoded characters.
+	 * @throws IOException if the data is not valid for the code table or the stream fails.
+	 */
+	public long decode(ByteBuffer data, int byteCount, CharSequence tail, long characters, OutputStream output) throws IOException {
+		this.data = data;
+		this.position = data == null ? 0 : data.position();
+		this.end = this.position + byteCount;
+		this.tail = tail;
+		this.tailIndex = 0;
+		this.bitBuffer = 0;
+		this.bitCount = 0;
+
+		byte[] chunk = new byte[64 * 1024];
+		int chunkSize = 0;
+		long decoded = 0;
+		int[] table = this.table;
+		int tableBits = this.tableBits;
+		int tableMask = (1 << tableBits) - 1;
+
+		// a single character has an empty code, it takes no bits.
+		if (this.rootCharacter >= 0 && this.nodes == 1) {
+			if (characters < 0) {
+				throw new IOException("the number of characters is needed to decode an empty code");
+			}
+			for (; decoded < characters; decoded++) {
+				chunk[chunkSize++] = (byte) this.rootCharacter;
+				if (chunkSize == chunk.length) {
+					output.write(chunk, 0, chunkSize);
+					chunkSize = 0;
+				}
+			}
+			output.write(chunk, 0, chunkSize);
+			return decoded;
+		}
+
+		while (decoded != characters) {
+			if (this.bitCount < tableBits) {
+				this.refill();
+				if (this.bitCount == 0 && characters < 0) {
+					break;
+				}
+			}
+
+			int index = (int) (this.bitCount >= tableBits ? this.bitBuffer >>> (this.bitCount - tableBits)
+					: this.bitBuffer << (tableBits - this.bitCount)) & tableMask;
+			int entry = table[index];
+			int character;
+			if (entry >= 0) {
+				int length = entry >>> 8;
+				if (length > this.bitCount) {
+					if (characters < 0) {
+						break;
+					}
+					throw new IOException("the compressed data ends inside a code");
+				}
+				this.bitCount -= length;
+				character = entry & 0xFF;
+			}
+			else if (entry == INVALID) {
+				throw new IOException("the compressed data has a code that is not in the table");
+			}
+			else {
+				character = this.walk(-entry);
+				if (character < 0) {
+					if (characters < 0) {
+						break;
+					}
+					throw new IOException("the compressed data ends inside a code");
+				}
+			}
+
+			chunk[chunkSize++] = (byte) character;
+			if (chunkSize == chunk.length) {
+				output.write(chunk, 0, chunkSize);
+				chunkSize = 0;
+			}
+			decoded++;
+		}
+		output.write(chunk, 0, chunkSize);
+		return decoded;
+	}
+
+	/**
+	 * decodes the rest of a code that is longer than the primary table, one bit at a time.
+	 * @param node the node that the first PRIMARY_BITS bits of the code lead to.
+	 * @return the character, or -1 if the data ends inside the code.
+	 * @throws IOException if the code is not in the table.
+	 */
+	private int walk(int node) throws IOException {
+		if (this.bitCount < PRIMARY_BITS) {
+			return -1;
+		}
+		this.bitCount -= PRIMARY_BITS;
+
+		while (true) {
+			if (this.bitCount == 0) {
+				this.refill();
+				if (this.bitCount == 0) {
+					return -1;
+				}
+			}
+			this.bitCount--;
+			int child = this.children[2 * node + (int) ((this.bitBuffer >>> this.bitCount) & 1)];
+			if (child < 0) {
+				return -child - 1;
+			}
+			if (child == 0) {
+				throw new IOException("the compressed data has a code that is not in the table");
+			}
+			node = child;
+		}
+	}
+
+	/**
+	 * moves bits into the bit buffer until it holds at least 56 bits or the data ends, the bytes
+	 * are read before the characters of the tail.
+	 */
+	private void refill() {
+		while (this.bitCount <= 56 && this.position < this.end) {
+			this.bitBuffer = (this.bitBuffer << 8) | (this.data.get(this.position++) & 0xFF);
+			this.bitCount += 8;
+		}
+		while (this.bitCount < 64 && this.position == this.end && this.tail != null && this.tailIndex < this.tail.length()) {
+			this.bitBuffer = (this.bitBuffer << 1) | (this.tail.charAt(this.tailIndex++) == '1' ? 1 : 0);
+			this.bitCount++;
+		}
+	}
+}
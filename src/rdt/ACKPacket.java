@@ -2,16 +2,36 @@ package rdt;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
 /**
  * this class represents a ACK packet.
+ * a packet in the original format acknowledges a single packet. a selective packet acknowledges
+ * every packet below its ACK number plus a few ranges of packets above it that have already 
+ * been received, so one ACK packet can stand for many data packets.
+ * selective layout: flags, cumulative ACK number, block count, checksum, source port, then a
+ * start and an end (exclusive) for every block. the checksum covers everything except itself
+ * and the source port.
+ * an extended packet is a selective packet with 32 bit numbers and the id of its transfer after
+ * the source port, the checksum also covers the transfer id.
  */
 public class ACKPacket {
+	public static final int SIZE = 7;             // final flag, ACK number, checksum and source port.
+	public static final int SELECTIVE_HEADER_SIZE = 8;
+	public static final int EXTENDED_HEADER_SIZE = 14;
+	public static final int MAX_BLOCKS = 8;
+	static final int FINAL_FLAG = 0x01;
+	static final int SELECTIVE_FLAG = 0x02;      // never set in the first byte of a TCPPacket.
+	static final int EXTENDED_FLAG = TCPPacket.EXTENDED_FLAG;
+	
 	short checkSum;
-	short ackNumber;
+	int ackNumber;
 	short sourcePort;
+	int transferId = 0;
 	boolean finalACKPacket = false;
 	boolean corrupted = false;
+	boolean selective = false;
+	boolean extended = false;
+	int blockCount = 0;
+	int[] blocks = new int[2 * MAX_BLOCKS];
 	
 	/**
 	 * Creates an empty ACKPacket, used when decoding a received packet.
@@ -29,52 +49,112 @@ public class ACKPacket {
 		this.sourcePort = sourcePort;
 	}
 	
+	/**
+	 * creates a new selective acknowledgment packet.
+	 * @param ackNumber the number of the first packet that has not been received, every packet
+	 * before it has been received.
+	 * @param sourcePort the source port this packet is sent from.
+	 * @param blocks the start and end (exclusive) of each received range above the ACK number.
+	 * @param blockCount the number of ranges, at most MAX_BLOCKS are sent.
+	 */
+	public ACKPacket(short ackNumber, short sourcePort, int[] blocks, int blockCount) {
+		this.ackNumber = ackNumber;
+		this.sourcePort = sourcePort;
+		this.selective = true;
+		this.blockCount = Math.min(blockCount, MAX_BLOCKS);
+		for (int i = 0; i < 2 * this.blockCount; i++) {
+			this.blocks[i] = blocks[i] & 0xFFFF;
+		}
+	}
+	
+	/**
+	 * creates a new selective acknowledgment packet in the extended format.
+	 * @param ackNumber the number of the first packet that has not been received, every packet
+	 * before it has been received.
+	 * @param sourcePort the source port this packet is sent from.
+	 * @param transferId the id of the transfer that is acknowledged.
+	 * @param blocks the start and end (exclusive) of each received range above the ACK number.
+	 * @param blockCount the number of ranges, at most MAX_BLOCKS are sent.
+	 */
+	public ACKPacket(int ackNumber, short sourcePort, int transferId, int[] blocks, int blockCount) {
+		this.ackNumber = ackNumber;
+		this.sourcePort = sourcePort;
+		this.transferId = transferId;
+		this.selective = true;
+		this.extended = true;
+		this.blockCount = Math.min(blockCount, MAX_BLOCKS);
+		System.arraycopy(blocks, 0, this.blocks, 0, 2 * this.blockCount);
+	}
+	
+	/**
+	 * returns true if the datagram in the buffer is an ACK packet and not a TCPPacket.
+	 * @param buffer the buffer that holds the datagram, from its position to its limit.
+	 */
+	public static boolean isACKPacket(ByteBuffer buffer) {
+		return buffer.remaining() < TCPPacket.HEADER_SIZE || (buffer.get(buffer.position()) & SELECTIVE_FLAG) != 0;
+	}
+	
 	/**
 	 * encodes the data of this packet into an array of bytes, in order 
 	 * to send it by using a DatagramSocket.
 	 * @return an array of bytes that contains the data of this packet.
 	 */
 	public byte[] encode() {
-		ArrayList<Byte> byteArrayList = new ArrayList<Byte>();
-		byte[] ackNumberBytes = this.shortToBytes(this.ackNumber);
-		byte[] sourcePortBytes = this.shortToBytes(this.sourcePort);
-		byte finalAckPacketByte;
-		
-		if (this.finalACKPacket) {
-			finalAckPacketByte = 1;
-			byteArrayList.add(finalAckPacketByte);
-		}
-		else {
-			finalAckPacketByte = 0;
-			byteArrayList.add(finalAckPacketByte);
-		}
-		
-		for (byte b: ackNumberBytes) {
-			byteArrayList.add(b);
-		}
-		
-		byte[] byteArray = new byte[byteArrayList.size()];
-		for (int i = 0; i < byteArrayList.size(); i++) {
-			byteArray[i] = byteArrayList.get(i).byteValue();
-		}
+		byte[] byteArray = new byte[this.getSize()];
+		this.encode(ByteBuffer.wrap(byteArray));
+		return byteArray;
+	}
+	
+	/**
+	 * encodes this packet straight into the given buffer, starting at its position.
+	 * the buffer may be a heap or a direct buffer, its position is moved past the packet.
+	 * @param buffer the buffer to write into, must have at least getSize() bytes remaining.
+	 */
+	public void encode(ByteBuffer buffer) {
+		ByteOrder order = buffer.order();
+		int start = buffer.position();
+		buffer.order(ByteOrder.BIG_ENDIAN);
 		
-		this.checkSum = this.calculateChecksum(byteArray);
-		byte[] checksumBytes = this.shortToBytes(this.checkSum);
+		int flags = (this.finalACKPacket ? FINAL_FLAG : 0) | (this.selective ? SELECTIVE_FLAG : 0) | (this.extended ? EXTENDED_FLAG : 0);
+		buffer.put((byte) flags);
 		
-		for (byte b: checksumBytes) {
-			byteArrayList.add(b);
+		if (this.extended) {
+			buffer.putInt(this.ackNumber);
+			buffer.put((byte) this.blockCount);
+			buffer.putShort((short) 0);
+			buffer.putShort(this.sourcePort);
+			buffer.putInt(this.transferId);
+			for (int i = 0; i < 2 * this.blockCount; i++) {
+				buffer.putInt(this.blocks[i]);
+			}
+			
+			long sum = Checksum.add(0, buffer, start, 6);
+			sum = Checksum.add(sum, buffer, start + 10, EXTENDED_HEADER_SIZE - 10 + 8 * this.blockCount);
+			this.checkSum = Checksum.finish(sum);
+			buffer.putShort(start + 6, this.checkSum);
 		}
-		
-		for (byte b: sourcePortBytes) {
-			byteArrayList.add(b);
+		else if (this.selective) {
+			buffer.putShort((short) this.ackNumber);
+			buffer.put((byte) this.blockCount);
+			buffer.putShort((short) 0);
+			buffer.putShort(this.sourcePort);
+			for (int i = 0; i < 2 * this.blockCount; i++) {
+				buffer.putShort((short) this.blocks[i]);
+			}
+			
+			long sum = Checksum.add(0, buffer, start, 4);
+			sum = Checksum.add(sum, buffer, start + SELECTIVE_HEADER_SIZE, 4 * this.blockCount);
+			this.checkSum = Checksum.finish(sum);
+			buffer.putShort(start + 4, this.checkSum);
 		}
-		
-		byteArray = new byte[byteArrayList.size()];
-		for (int i = 0; i < byteArrayList.size(); i++) {
-			byteArray[i] = byteArrayList.get(i).byteValue();
+		else {
+			buffer.putShort((short) this.ackNumber);
+			// the checksum covers the final flag and the ACK number.
+			this.checkSum = Checksum.finish(Checksum.add(0, buffer, start, 3));
+			buffer.putShort(this.checkSum);
+			buffer.putShort(this.sourcePort);
 		}
-		
-		return byteArray;
+		buffer.order(order);
 	}
 	
 	/**
@@ -82,53 +162,102 @@ public class ACKPacket {
 	 * @param data an array of bytes that represent an encoded packet.
 	 */
 	public void decode(byte data[]) {
-		ArrayList<Byte> byteArrayList = new ArrayList<Byte>();
-		int currentIndex = 0;
-		short calculatedCheckSum = 0;
-		byte[] ackNumberBytes = new byte[2];
-		byte[] checksumBytes = new byte[2];
-		byte[] sourcePortBytes = new byte[2];
-		byte finalAckPacketByte;
+		this.decode(ByteBuffer.wrap(data));
+	}
+	
+	/**
+	 * decodes a packet that starts at the position of the given buffer, the checksum is 
+	 * verified in place. the buffer position is moved past the packet.
+	 * @param buffer the buffer that holds an encoded packet.
+	 */
+	public void decode(ByteBuffer buffer) {
+		ByteOrder order = buffer.order();
+		int start = buffer.position();
+		buffer.order(ByteOrder.BIG_ENDIAN);
 		
-		finalAckPacketByte = data[currentIndex];
-		byteArrayList.add(data[currentIndex]);
-		if (finalAckPacketByte == 0) {
-			this.finalACKPacket = false;
-		}
-		else {
-			this.finalACKPacket = true;
+		// an empty datagram has no flags to read.
+		if (!buffer.hasRemaining()) {
+			this.corrupted = true;
+			buffer.order(order);
+			return;
 		}
-		currentIndex++;
+		int flags = buffer.get();
+		this.finalACKPacket = (flags & FINAL_FLAG) != 0;
+		this.selective = (flags & SELECTIVE_FLAG) != 0;
+		this.extended = this.selective && (flags & EXTENDED_FLAG) != 0;
 		
-		ackNumberBytes[0] = data[currentIndex];
-		byteArrayList.add(data[currentIndex]);
-		currentIndex++;
-		ackNumberBytes[1] = data[currentIndex];
-		byteArrayList.add(data[currentIndex]);
-		currentIndex++;
-		this.ackNumber = this.bytesToShort(ackNumberBytes);
-		
-		checksumBytes[0] = data[currentIndex];
-		currentIndex++;
-		checksumBytes[1] = data[currentIndex];
-		currentIndex++;
-		this.checkSum = this.bytesToShort(checksumBytes);
-		
-		sourcePortBytes[0] = data[currentIndex];
-		currentIndex++;
-		sourcePortBytes[1] = data[currentIndex];
-		currentIndex++;
-		this.sourcePort = this.bytesToShort(sourcePortBytes);
-		
-		byte[] byteArray = new byte[byteArrayList.size()];
-		for (int i = 0; i < byteArrayList.size(); i++) {
-			byteArray[i] = byteArrayList.get(i).byteValue();
+		if (this.extended) {
+			// a packet too short for its header or its blocks can not be trusted to index the buffer.
+			if (buffer.remaining() < EXTENDED_HEADER_SIZE - 1) {
+				this.corrupted = true;
+				buffer.order(order);
+				return;
+			}
+			this.ackNumber = buffer.getInt();
+			this.blockCount = buffer.get() & 0xFF;
+			this.checkSum = buffer.getShort();
+			this.sourcePort = buffer.getShort();
+			this.transferId = buffer.getInt();
+			
+			if (this.blockCount > MAX_BLOCKS || 8 * this.blockCount > buffer.remaining()) {
+				this.corrupted = true;
+				this.blockCount = 0;
+				buffer.order(order);
+				return;
+			}
+			for (int i = 0; i < 2 * this.blockCount; i++) {
+				this.blocks[i] = buffer.getInt();
+			}
+			
+			long sum = Checksum.add(0, buffer, start, 6);
+			sum = Checksum.add(sum, buffer, start + 10, EXTENDED_HEADER_SIZE - 10 + 8 * this.blockCount);
+			if (this.checkSum != Checksum.finish(sum)) {
+				this.corrupted = true;
+			}
 		}
-		calculatedCheckSum = this.calculateChecksum(byteArray);
-		
-		if (this.checkSum != calculatedCheckSum) {
-			this.corrupted = true;
+		else if (this.selective) {
+			if (buffer.remaining() < SELECTIVE_HEADER_SIZE - 1) {
+				this.corrupted = true;
+				buffer.order(order);
+				return;
+			}
+			this.ackNumber = buffer.getShort() & 0xFFFF;
+			this.blockCount = buffer.get() & 0xFF;
+			this.checkSum = buffer.getShort();
+			this.sourcePort = buffer.getShort();
+			
+			// a damaged block count can not be trusted to index the buffer.
+			if (this.blockCount > MAX_BLOCKS || 4 * this.blockCount > buffer.remaining()) {
+				this.corrupted = true;
+				this.blockCount = 0;
+				buffer.order(order);
+				return;
+			}
+			for (int i = 0; i < 2 * this.blockCount; i++) {
+				this.blocks[i] = buffer.getShort() & 0xFFFF;
+			}
+			
+			long sum = Checksum.add(0, buffer, start, 4);
+			sum = Checksum.add(sum, buffer, start + SELECTIVE_HEADER_SIZE, 4 * this.blockCount);
+			if (this.checkSum != Checksum.finish(sum)) {
+				this.corrupted = true;
+			}
 		}
+		else {
+			if (buffer.remaining() < SIZE - 1) {
+				this.corrupted = true;
+				buffer.order(order);
+				return;
+			}
+			this.ackNumber = buffer.getShort() & 0xFFFF;
+			this.checkSum = buffer.getShort();
+			this.sourcePort = buffer.getShort();
+			
+			if (this.checkSum != Checksum.finish(Checksum.add(0, buffer, start, 3))) {
+				this.corrupted = true;
+			}
+		}
+		buffer.order(order);
 	}
 	
 	/**
@@ -137,35 +266,7 @@ public class ACKPacket {
 	 * @return the checksum of these bytes as short.
 	 */
 	public short calculateChecksum(byte[] buf) {
-	    int length = buf.length;
-	    int i = 0;
-
-	    long sum = 0;
-	    long data;
-
-	    while (length > 1) {
-	      data = (((buf[i] << 8) & 0xFF00) | ((buf[i + 1]) & 0xFF));
-	      sum += data;
-	      if ((sum & 0xFFFF0000) > 0) {
-	        sum = sum & 0xFFFF;
-	        sum += 1;
-	      }
-
-	      i += 2;
-	      length -= 2;
-	    }
-
-	    if (length > 0) {
-	      sum += (buf[i] << 8 & 0xFF00);
-	      if ((sum & 0xFFFF0000) > 0) {
-	        sum = sum & 0xFFFF;
-	        sum += 1;
-	      }
-	    }
-
-	    sum = ~sum;
-	    sum = sum & 0xFFFF;
-	    return (short) sum;
+		return Checksum.calculate(buf);
 	}
 	
 	public boolean isFinalACKPacket() {
@@ -176,10 +277,21 @@ public class ACKPacket {
 		return sourcePort;
 	}
 
-	public short getAckNumber() {
+	/**
+	 * returns the ACK number, in the original format a number from 0 to 65535.
+	 */
+	public int getAckNumber() {
 		return ackNumber;
 	}
 
+	public int getTransferId() {
+		return transferId;
+	}
+
+	public boolean isExtended() {
+		return extended;
+	}
+
 	public void setFinalACKPacket(boolean finalACKPacket) {
 		this.finalACKPacket = finalACKPacket;
 	}
@@ -187,6 +299,40 @@ public class ACKPacket {
 	public boolean isCorrupted() {
 		return corrupted;
 	}
+	
+	public boolean isSelective() {
+		return selective;
+	}
+	
+	public int getBlockCount() {
+		return blockCount;
+	}
+	
+	/**
+	 * returns the first packet of a received range.
+	 * @param index the index of the range.
+	 */
+	public int getBlockStart(int index) {
+		return this.blocks[2 * index];
+	}
+	
+	/**
+	 * returns the packet after the last packet of a received range.
+	 * @param index the index of the range.
+	 */
+	public int getBlockEnd(int index) {
+		return this.blocks[2 * index + 1];
+	}
+	
+	/**
+	 * returns the number of bytes of the encoded packet.
+	 */
+	public int getSize() {
+		if (this.extended) {
+			return EXTENDED_HEADER_SIZE + 8 * this.blockCount;
+		}
+		return this.selective ? SELECTIVE_HEADER_SIZE + 4 * this.blockCount : SIZE;
+	}
 	/**
 	 * converts a short data type to bytes.
 	 * @param value the short value to be convertd to bytes.
@@ -0,0 +1,79 @@
+package rdt;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+/**
+ * compares the CPU cost of a client whose ACK handler polls for packets to acknowledge with one
+ * whose ACK handler sleeps until the data handler wakes it. in each mode one client receives the
+ * file from a server in the same JVM without simulated loss, the CPU time of the client handlers
+ * and of the server's event loop is reported per MB of compressed data next to the throughput.
+ * usage: AckBenchmark [file size in KB] [protocol] [window size] [runs]
+ */
+public class AckBenchmark {
+	static final short SERVER_PORT = 5300;
+	static final short CLIENT_PORT = 6300;
+
+	public static void main(String[] args) throws Exception {
+		int fileSize = args.length > 0 ? Integer.parseInt(args[0]) * 1024 : 256 * 1024;
+		int protocol = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		int windowSize = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+		int runs = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+		Path file = SessionLoadBenchmark.createInputFile(fileSize);
+		long dataSize = FileHandler.getFileHandler().getFilePackets(file.toString(), FileHandler.DEFAULT_PACKET_SIZE,
+				(short) 0, (short) 0, false, 0, 1).getDataSize();
+
+		StringBuilder results = new StringBuilder();
+		results.append(String.format("protocol %d, window %d, %d KB file (%d KB compressed)%n", protocol, windowSize, fileSize / 1024, dataSize / 1024));
+		results.append(String.format("%8s %10s %16s %16s %16s%n", "ACKs", "MB/s", "client ms/MB", "ACK thread ms/MB", "server ms/MB"));
+		for (int run = 0; run < runs; run++) {
+			for (boolean spinning: new boolean[] {true, false}) {
+				double[] result = transfer(file, protocol, windowSize, spinning);
+				double megabytes = dataSize / (1024.0 * 1024.0);
+				results.append(String.format("%8s %10.2f %16.1f %16.1f %16.1f%n", spinning ? "spinning" : "parked",
+						megabytes / result[0], result[1] / megabytes, result[2] / megabytes, result[3] / megabytes));
+			}
+		}
+		System.out.print(results);
+
+		Files.delete(file);
+	}
+
+	/**
+	 * transfers the file to one client.
+	 * @param file the file to request.
+	 * @param protocol the protocol of the server.
+	 * @param windowSize the window size of the server.
+	 * @param spinning true to let the ACK handler poll.
+	 * @return the transfer time in seconds and the CPU time in milliseconds of both client handlers,
+	 * of the ACK handler alone and of the server.
+	 */
+	private static double[] transfer(Path file, int protocol, int windowSize, boolean spinning) throws Exception {
+		Server server = new Server("127.0.0.1", SERVER_PORT, windowSize);
+		server.setProtocol(protocol);
+		server.setVerbose(false);
+		server.start();
+
+		Client client = new Client("127.0.0.1", SERVER_PORT, "127.0.0.1", CLIENT_PORT, file.toString());
+		client.setLossProbability(-1);
+		client.setCorruptProbability(-1);
+		client.setVerbose(false);
+		client.setSpinningAckHandler(spinning);
+
+		long startCpu = server.getCpuTime();
+		client.start();
+		client.join();
+		long serverCpu = server.getCpuTime() - startCpu;
+		server.shutdown();
+		server.join();
+
+		// the client writes the received file and its decompressed copy to the working directory.
+		Files.deleteIfExists(Paths.get(client.getReceivedFileName()));
+		String name = file.getFileName().toString();
+		Files.deleteIfExists(Paths.get(name.substring(0, name.lastIndexOf(".")) + "-decompressed.txt"));
+
+		return new double[] {client.getTransferTime() / 1e9, (client.dataHandlerCpu + client.ackHandlerCpu) / 1e6,
+				client.ackHandlerCpu / 1e6, serverCpu / 1e6};
+	}
+}
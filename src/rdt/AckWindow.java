@@ -0,0 +1,144 @@
+package rdt;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+/**
+ * records which packets of a sliding window have been acknowledged or received.
+ * every number below the base of the window is done, the numbers from the base up to the
+ * capacity of the window are kept as bits of a ring of longs, so marking and testing a
+ * number are O(1) and the memory does not grow with the size of the file.
+ * numbers may be marked by any thread without locking, the window must only be advanced
+ * by one thread.
+ */
+public class AckWindow {
+	private final AtomicLongArray words;
+	private final int capacity;
+	private volatile int base = 0;
+
+	/**
+	 * creates a new window.
+	 * @param capacity the number of packets after the base that can be marked, rounded up to a multiple of 64.
+	 */
+	public AckWindow(int capacity) {
+		int wordCount = Math.max(1, (capacity + 63) / 64);
+		this.words = new AtomicLongArray(wordCount);
+		this.capacity = wordCount * 64;
+	}
+
+	/**
+	 * marks a number as done.
+	 * @param number the number to mark.
+	 * @return true if the number was not done before, false if it was already done or is
+	 * beyond the window.
+	 */
+	public boolean mark(int number) {
+		int currentBase = this.base;
+		if (number < currentBase || number - currentBase >= this.capacity) {
+			return false;
+		}
+
+		int word = (number / 64) % this.words.length();
+		long bit = 1L << (number % 64);
+		long value;
+		do {
+			value = this.words.get(word);
+			if ((value & bit) != 0) {
+				return false;
+			}
+		} while (!this.words.compareAndSet(word, value, value | bit));
+
+		return true;
+	}
+
+	/**
+	 * returns true if a number is done, every number below the base is done.
+	 * @param number the number to test.
+	 */
+	public boolean isMarked(int number) {
+		int currentBase = this.base;
+		if (number < currentBase) {
+			return true;
+		}
+		if (number - currentBase >= this.capacity) {
+			return false;
+		}
+		return (this.words.get((number / 64) % this.words.length()) & (1L << (number % 64))) != 0;
+	}
+
+	/**
+	 * returns true if a number is too far ahead of the base to be marked.
+	 * @param number the number to test.
+	 */
+	public boolean isBeyond(int number) {
+		return number - this.base >= this.capacity;
+	}
+
+	/**
+	 * moves the base past every marked number that directly follows it, their bits are cleared
+	 * so they can be used by the numbers that enter the window.
+	 * @return the new base.
+	 */
+	public int advance() {
+		int currentBase = this.base;
+
+		while (true) {
+			int word = (currentBase / 64) % this.words.length();
+			long bit = 1L << (currentBase % 64);
+			if ((this.words.get(word) & bit) == 0) {
+				break;
+			}
+
+			long value;
+			do {
+				value = this.words.get(word);
+			} while (!this.words.compareAndSet(word, value, value & ~bit));
+			currentBase++;
+		}
+
+		this.base = currentBase;
+		return currentBase;
+	}
+
+	/**
+	 * collects the ranges of marked numbers between the base and a limit, the number at the
+	 * base itself is missing unless the window has not been advanced yet.
+	 * @param limit the number after the last number to look at.
+	 * @param blocks receives the start and the end (exclusive) of each range.
+	 * @param maxBlocks the largest number of ranges to collect.
+	 * @return the number of ranges collected.
+	 */
+	public int getBlocks(int limit, int[] blocks, int maxBlocks) {
+		int currentBase = this.base;
+		int count = 0;
+		int blockStart = -1;
+		limit = Math.min(limit, currentBase + this.capacity);
+
+		for (int number = currentBase; number < limit && count < maxBlocks; number++) {
+			if (this.isMarked(number)) {
+				if (blockStart < 0) {
+					blockStart = number;
+				}
+			}
+			else if (blockStart >= 0) {
+				blocks[2 * count] = blockStart;
+				blocks[2 * count + 1] = number;
+				count++;
+				blockStart = -1;
+			}
+		}
+
+		if (blockStart >= 0 && count < maxBlocks) {
+			blocks[2 * count] = blockStart;
+			blocks[2 * count + 1] = limit;
+			count++;
+		}
+		return count;
+	}
+
+	public int getBase() {
+		return base;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+}
@@ -0,0 +1,302 @@
+package rdt;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+/**
+ * sends and receives datagrams in batches on a non-blocking channel.
+ * datagrams that are sent are packed into one reused direct buffer and written back to back when
+ * the batch is flushed, so a window burst costs no copy into a temporary buffer and the sender
+ * goes through all its packets before it writes any of them. datagrams that do not fit in the
+ * socket buffer stay queued until the next flush. receiving drains every datagram that is waiting
+ * in the channel before it returns.
+ * the datagrams and the channel calls are counted, so the cost of the I/O can be measured per
+ * packet. java has no call that sends or receives several datagrams at once, so every datagram
+ * still takes one system call, the batching only takes the calls out of the protocol logic and
+ * puts them next to each other.
+ * the channel is made non-blocking, its owner may switch it to blocking mode to receive from a
+ * thread that should block in the channel instead of a selector, a receive then waits for one
+ * datagram and returns after it.
+ * a batched channel may be used by one thread that sends and one thread that receives.
+ */
+public class BatchedChannel {
+	private final DatagramChannel channel;
+	private final ByteBuffer batch;          // the queued datagrams, from the offset of the first one to batchEnd.
+	private final int[] offsets;
+	private final int[] lengths;
+	private final SocketAddress[] targets;
+	private int head = 0;                    // the first queued datagram.
+	private int count = 0;                   // the number of queued datagrams.
+	private int batchEnd = 0;
+	private long datagramsSent = 0;
+	private long datagramsReceived = 0;
+	private long sendCalls = 0;
+	private long receiveCalls = 0;
+	private long flushes = 0;
+	private long dropped = 0;
+	private long firstTime = 0;              // in nanoseconds, the times of the first and the last datagram.
+	private long lastTime = 0;
+
+	/**
+	 * an object that handles received datagrams.
+	 */
+	public interface Receiver {
+		/**
+		 * handles one datagram, the buffer is reused for the next datagram when this returns.
+		 * @param buffer the datagram, from the position to the limit.
+		 * @param sender the address that sent the datagram.
+		 * @throws IOException if handling the datagram fails.
+		 */
+		void receive(ByteBuffer buffer, SocketAddress sender) throws IOException;
+	}
+
+	/**
+	 * creates a new batched channel, the channel is made non-blocking.
+	 * @param channel the channel to send and receive on.
+	 * @param batchSize the number of bytes that can be queued, at least one datagram.
+	 * @param maxDatagrams the largest number of datagrams that can be queued.
+	 * @throws IOException if the channel can not be made non-blocking.
+	 */
+	public BatchedChannel(DatagramChannel channel, int batchSize, int maxDatagrams) throws IOException {
+		channel.configureBlocking(false);
+		this.channel = channel;
+		this.batch = ByteBuffer.allocateDirect(batchSize);
+		this.offsets = new int[maxDatagrams];
+		this.lengths = new int[maxDatagrams];
+		this.targets = new SocketAddress[maxDatagrams];
+	}
+
+	/**
+	 * queues a datagram, the batch is flushed first if it is full. a datagram that finds the batch
+	 * and the socket buffer full is dropped, like a network drops a packet.
+	 * @param data the datagram.
+	 * @param target the address to send the datagram to.
+	 * @return false if the datagram was dropped.
+	 * @throws IOException if the channel fails.
+	 */
+	public synchronized boolean send(byte[] data, SocketAddress target) throws IOException {
+		if (!this.hasRoom(data.length)) {
+			this.flush();
+			if (!this.hasRoom(data.length)) {
+				this.dropped++;
+				return false;
+			}
+		}
+
+		int slot = (this.head + this.count) % this.offsets.length;
+		this.offsets[slot] = this.batchEnd;
+		this.lengths[slot] = data.length;
+		this.targets[slot] = target;
+		this.batch.clear();
+		this.batch.position(this.batchEnd);
+		this.batch.put(data);
+		this.batchEnd += data.length;
+		this.count++;
+		return true;
+	}
+
+	/**
+	 * returns true if a datagram of the given length can be queued, the queued datagrams are moved
+	 * to the start of the batch to make room if needed.
+	 */
+	private boolean hasRoom(int length) {
+		if (this.count == this.offsets.length) {
+			return false;
+		}
+		if (this.batchEnd + length <= this.batch.capacity()) {
+			return true;
+		}
+
+		int start = this.count == 0 ? this.batchEnd : this.offsets[this.head];
+		if (this.batchEnd - start + length > this.batch.capacity()) {
+			return false;
+		}
+		this.batch.clear();
+		this.batch.position(start);
+		this.batch.limit(this.batchEnd);
+		this.batch.compact();
+		for (int i = 0; i < this.count; i++) {
+			this.offsets[(this.head + i) % this.offsets.length] -= start;
+		}
+		this.batchEnd -= start;
+		return true;
+	}
+
+	/**
+	 * writes the queued datagrams back to back until the queue is empty or the socket buffer is full.
+	 * @return the number of datagrams written.
+	 * @throws IOException if the channel fails.
+	 */
+	public synchronized int flush() throws IOException {
+		if (this.count == 0) {
+			return 0;
+		}
+
+		int written = 0;
+		this.flushes++;
+		while (this.count > 0) {
+			this.batch.clear();
+			this.batch.position(this.offsets[this.head]);
+			this.batch.limit(this.offsets[this.head] + this.lengths[this.head]);
+			this.sendCalls++;
+			if (this.channel.send(this.batch, this.targets[this.head]) == 0) {
+				break;
+			}
+
+			this.targets[this.head] = null;
+			this.head = (this.head + 1) % this.offsets.length;
+			this.count--;
+			written++;
+		}
+
+		if (this.count == 0) {
+			this.batchEnd = 0;
+		}
+		this.datagramsSent += written;
+		this.stamp(written);
+		return written;
+	}
+
+	/**
+	 * receives every datagram that is waiting in the channel.
+	 * @param buffer the buffer to receive into, must hold the largest datagram.
+	 * @param receiver handles every received datagram.
+	 * @return the number of datagrams received.
+	 * @throws IOException if the channel or the receiver fails.
+	 */
+	public int receive(ByteBuffer buffer, Receiver receiver) throws IOException {
+		int received = 0;
+		int calls = 0;
+		SocketAddress sender;
+
+		buffer.clear();
+		while (true) {
+			calls++;
+			if ((sender = this.channel.receive(buffer)) == null) {
+				break;
+			}
+			buffer.flip();
+			received++;
+			receiver.receive(buffer, sender);
+			buffer.clear();
+			if (this.channel.isBlocking()) {
+				break;
+			}
+		}
+
+		synchronized (this) {
+			this.datagramsReceived += received;
+			this.receiveCalls += calls;
+			this.stamp(received);
+		}
+		return received;
+	}
+
+	/**
+	 * receives every datagram that is waiting in the channel, each into a buffer of its own taken
+	 * from a pool. the receiver owns the buffer and must give it back to the pool once it is done
+	 * with the datagram. when the pool has no buffer left the datagrams stay in the channel.
+	 * @param pool the pool to take the buffers from, its buffers must hold the largest datagram.
+	 * @param receiver handles every received datagram.
+	 * @return the number of datagrams received.
+	 * @throws IOException if the channel or the receiver fails.
+	 */
+	public int receive(BufferPool pool, Receiver receiver) throws IOException {
+		int received = 0;
+		int calls = 0;
+		SocketAddress sender;
+
+		while (true) {
+			ByteBuffer buffer = pool.acquire();
+			if (buffer == null) {
+				break;
+			}
+			calls++;
+			if ((sender = this.channel.receive(buffer)) == null) {
+				pool.release(buffer);
+				break;
+			}
+			buffer.flip();
+			received++;
+			receiver.receive(buffer, sender);
+			if (this.channel.isBlocking()) {
+				break;
+			}
+		}
+
+		synchronized (this) {
+			this.datagramsReceived += received;
+			this.receiveCalls += calls;
+			this.stamp(received);
+		}
+		return received;
+	}
+
+	private void stamp(int datagrams) {
+		if (datagrams > 0) {
+			this.lastTime = System.nanoTime();
+			if (this.firstTime == 0) {
+				this.firstTime = this.lastTime;
+			}
+		}
+	}
+
+	/**
+	 * returns true if datagrams are waiting for room in the socket buffer.
+	 */
+	public synchronized boolean hasPending() {
+		return this.count > 0;
+	}
+
+	public DatagramChannel getChannel() {
+		return channel;
+	}
+
+	public synchronized long getDatagramsSent() {
+		return datagramsSent;
+	}
+
+	public synchronized long getDatagramsReceived() {
+		return datagramsReceived;
+	}
+
+	public synchronized long getSendCalls() {
+		return sendCalls;
+	}
+
+	public synchronized long getReceiveCalls() {
+		return receiveCalls;
+	}
+
+	public synchronized long getFlushes() {
+		return flushes;
+	}
+
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * returns the number of datagrams sent and received per second, between the first and the last one.
+	 */
+	public synchronized double getPacketsPerSecond() {
+		long time = this.lastTime - this.firstTime;
+		return time <= 0 ? 0 : (this.datagramsSent + this.datagramsReceived) * 1e9 / time;
+	}
+
+	/**
+	 * returns the number of channel calls per datagram sent or received, the empty receive that ends
+	 * a drain and the sends that found the socket buffer full are counted.
+	 */
+	public synchronized double getCallsPerPacket() {
+		long datagrams = this.datagramsSent + this.datagramsReceived;
+		return datagrams == 0 ? 0 : (double) (this.sendCalls + this.receiveCalls) / datagrams;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("io: %d sent in %d flushes, %d received, %d dropped, %.0f packets/s, %.2f calls/packet",
+				this.datagramsSent, this.flushes, this.datagramsReceived, this.dropped, this.getPacketsPerSecond(), this.getCallsPerPacket());
+	}
+}
@@ -0,0 +1,107 @@
+package rdt;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+/**
+ * a pool of direct buffers that hold one datagram each. the buffers are slices of larger direct
+ * slabs, a buffer is taken to receive a datagram into and given back once its data is written,
+ * so the pool only allocates a new slab while all its buffers are in use and receiving produces
+ * no garbage once the pool has grown to the number of packets that are held at once. the pool
+ * never holds more than its largest number of buffers, when they are all in use no buffer is
+ * taken until one is given back.
+ */
+public class BufferPool {
+	private final int bufferSize;
+	private final int slabBuffers;
+	private final int maxBuffers;
+	private final ArrayDeque<ByteBuffer> free = new ArrayDeque<ByteBuffer>();
+	private int allocatedBuffers = 0;
+	private int inUse = 0;
+	private int maxInUse = 0;
+	private long acquires = 0;
+
+	/**
+	 * creates a new pool, no memory is allocated until the first buffer is taken.
+	 * @param bufferSize the number of bytes in each buffer.
+	 * @param slabBuffers the number of buffers allocated together.
+	 * @param maxBuffers the largest number of buffers the pool allocates.
+	 */
+	public BufferPool(int bufferSize, int slabBuffers, int maxBuffers) {
+		this.bufferSize = bufferSize;
+		this.slabBuffers = Math.max(1, Math.min(slabBuffers, maxBuffers));
+		this.maxBuffers = maxBuffers;
+	}
+
+	/**
+	 * takes a buffer from the pool, the buffer is cleared.
+	 * @return a buffer of the size of the pool, or null if every buffer the pool may allocate is in use.
+	 */
+	public synchronized ByteBuffer acquire() {
+		if (this.free.isEmpty()) {
+			if (this.allocatedBuffers >= this.maxBuffers) {
+				return null;
+			}
+			this.allocateSlab();
+		}
+
+		ByteBuffer buffer = this.free.pop();
+		buffer.clear();
+		this.inUse++;
+		this.maxInUse = Math.max(this.maxInUse, this.inUse);
+		this.acquires++;
+		return buffer;
+	}
+
+	/**
+	 * gives a buffer back to the pool, the buffer must not be used after this.
+	 * @param buffer a buffer taken from this pool.
+	 */
+	public synchronized void release(ByteBuffer buffer) {
+		this.free.push(buffer);
+		this.inUse--;
+	}
+
+	private void allocateSlab() {
+		int buffers = Math.min(this.slabBuffers, this.maxBuffers - this.allocatedBuffers);
+		ByteBuffer slab = ByteBuffer.allocateDirect(this.bufferSize * buffers);
+		for (int i = 0; i < buffers; i++) {
+			slab.limit((i + 1) * this.bufferSize);
+			slab.position(i * this.bufferSize);
+			this.free.push(slab.slice());
+		}
+		this.allocatedBuffers += buffers;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public int getMaxBuffers() {
+		return maxBuffers;
+	}
+
+	public synchronized int getInUse() {
+		return inUse;
+	}
+
+	public synchronized int getMaxInUse() {
+		return maxInUse;
+	}
+
+	public synchronized long getAcquires() {
+		return acquires;
+	}
+
+	/**
+	 * returns the number of bytes the pool allocated.
+	 */
+	public synchronized long getAllocatedBytes() {
+		return (long) this.allocatedBuffers * this.bufferSize;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "buffer pool: " + this.getAcquires() + " acquires, " + this.getMaxInUse() + " buffers in use at most, "
+				+ this.getAllocatedBytes() + " bytes allocated";
+	}
+}
@@ -0,0 +1,90 @@
+package rdt;
+
+import java.nio.ByteBuffer;
+/**
+ * the 16 bit one's complement checksum used by both TCPPackets and ACKPackets.
+ * the sum can be accumulated over several regions of a buffer, so a packet can be
+ * checked in place without first copying the covered fields into a separate array.
+ */
+final class Checksum {
+
+	private Checksum() {
+	}
+
+	/**
+	 * adds a region of a buffer to a running one's complement sum, the buffer position is not changed.
+	 * only the last region added to a sum may have an odd length.
+	 * @param sum the running sum, 0 for a new checksum.
+	 * @param buffer the buffer that holds the region.
+	 * @param offset the absolute index of the first byte of the region.
+	 * @param length the number of bytes in the region.
+	 * @return the new running sum.
+	 */
+	static long add(long sum, ByteBuffer buffer, int offset, int length) {
+		int i = offset;
+		int end = offset + length;
+
+		while (end - i > 1) {
+			sum += ((buffer.get(i) << 8) & 0xFF00) | (buffer.get(i + 1) & 0xFF);
+			if ((sum & 0xFFFF0000) > 0) {
+				sum = sum & 0xFFFF;
+				sum += 1;
+			}
+			i += 2;
+		}
+
+		if (i < end) {
+			sum += (buffer.get(i) << 8) & 0xFF00;
+			if ((sum & 0xFFFF0000) > 0) {
+				sum = sum & 0xFFFF;
+				sum += 1;
+			}
+		}
+
+		return sum;
+	}
+
+	/**
+	 * turns a running sum into the checksum that is written in a packet.
+	 * @param sum the running sum.
+	 * @return the checksum as short.
+	 */
+	static short finish(long sum) {
+		return (short) (~sum & 0xFFFF);
+	}
+
+	/**
+	 * calculates the checksum of an array of bytes.
+	 * @param buf the array of bytes.
+	 * @return the checksum of these bytes as short.
+	 */
+	static short calculate(byte[] buf) {
+		return finish(add(0, ByteBuffer.wrap(buf), 0, buf.length));
+	}
+
+	/**
+	 * updates a checksum after one 16 bit word it covers has changed, without summing the
+	 * whole packet again (RFC 1624, eqn. 3).
+	 * @param checkSum the checksum before the change.
+	 * @param oldWord the old value of the changed word.
+	 * @param newWord the new value of the changed word.
+	 * @return the checksum after the change.
+	 */
+	static short adjust(short checkSum, short oldWord, short newWord) {
+		long sum = ~checkSum & 0xFFFF;
+
+		sum += ~oldWord & 0xFFFF;
+		if ((sum & 0xFFFF0000) > 0) {
+			sum = sum & 0xFFFF;
+			sum += 1;
+		}
+
+		sum += newWord & 0xFFFF;
+		if ((sum & 0xFFFF0000) > 0) {
+			sum = sum & 0xFFFF;
+			sum += 1;
+		}
+
+		return finish(sum);
+	}
+}
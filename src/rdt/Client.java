@@ -3,18 +3,20 @@ package rdt;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
-import java.net.SocketException;
-import java.net.UnknownHostException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Random;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import huffman.HuffmanCompressor;
 /**
@@ -30,12 +32,47 @@ public class Client extends Thread{
 	String fileName;
 	int lossProbability = 30;
 	int corruptProbability = 30;
-	int packetSize = 1000;
-	DatagramSocket recivingSocket;
-	DatagramSocket sendingSocket;
-	ConcurrentLinkedQueue<ACKPacket> ackQueue = new ConcurrentLinkedQueue<ACKPacket>();
-	CopyOnWriteArrayList<Short> recivedPacketNumbers = new CopyOnWriteArrayList<Short>();
-	ConcurrentLinkedQueue<TCPPacket> recivedPackets = new ConcurrentLinkedQueue<TCPPacket>();
+	int packetSize = FileHandler.DEFAULT_PACKET_SIZE;   // the number of data bytes in a packet asked from the server.
+	boolean probePacketSize = false;   // true to look for a larger packet size before requesting the file.
+	int probeCount = 3;       // the number of probes of one size that must all come back.
+	int probeTimeOut = 200;   // the time in milliseconds a probe may take to come back.
+	static final int[] PROBE_MTUS = {65535, 9000, 1500};   // loopback, jumbo frames and ethernet.
+	static final int IP_UDP_HEADER_SIZE = 28;
+	static final int MIN_RECEIVE_WINDOW = 64;
+	static final int MAX_RECEIVE_WINDOW = 16384;   // less than half of the 16 bit numbers of the original format.
+	InetSocketAddress serverAddress;
+	DatagramChannel recivingChannel;   // bound to the client port, receives the data and the probes.
+	DatagramChannel sendingChannel;    // sends the requests, the probes and the ACKs.
+	BatchedChannel reciver;
+	BatchedChannel sender;
+	Selector reciveSelector;
+	int lastEchoedProbe = 0;
+	int ackEvery = 8;   // the number of received packets that are acknowledged together.
+	int ackDelay = 2;   // the longest time in milliseconds a received packet waits for its ACK.
+	boolean spinningAckHandler = false;   // true makes the ACK handler poll instead of sleeping, to compare the two.
+	boolean verbose = true;
+	boolean virtualThreads = false;   // true to run the handlers on virtual threads when the runtime has them.
+	boolean decompress = true;
+	String receivedFileName = null;   // the file the compressed data is written to, null for a name after the requested file.
+	AtomicInteger unacknowledgedPackets = new AtomicInteger(0);
+	volatile long firstUnacknowledgedTime;   // in nanoseconds.
+	Thread ackThread;
+	long dataHandlerCpu = 0;   // the CPU time in nanoseconds that each handler used.
+	long ackHandlerCpu = 0;
+	long firstPacketTime = 0;  // in nanoseconds, the times the first and the last packet were received.
+	long lastPacketTime = 0;
+	volatile boolean ackNow = false;
+	volatile int highestPacketNumber = -1;
+	volatile int lastPacketNumber = -1;
+	int transferId = new Random().nextInt(Integer.MAX_VALUE - 1) + 1;   // tells this transfer apart from the others of the server.
+	int extendedRequests = 3;   // the number of extended requests sent before falling back to the old packet format.
+	volatile boolean extended = true;
+	ConcurrentLinkedQueue<Integer> packetsToAcknowledge = new ConcurrentLinkedQueue<Integer>();   // in the old format every packet gets its own ACK.
+	int receiveBufferBytes = 8 * 1024 * 1024;   // the memory for the received packets that wait to be written in order.
+	int receiveWindowSize;   // the number of packets after the first missing one that are accepted, from the bytes and the packet size.
+	AckWindow recivedPacketNumbers;
+	BufferPool packetBuffers;   // the received packets are kept in the buffers they were received into.
+	ReorderBuffer recivedPackets;   // writes the data of the received packets in order.
 	
 	/**
 	 * creates a new client, reads the client data from file.
@@ -43,8 +80,7 @@ public class Client extends Thread{
 	public Client() {
 		try {
 			this.loadClientFromFile();
-			recivingSocket = new DatagramSocket(this.clientPort);
-			sendingSocket = new DatagramSocket();
+			this.openChannels();
 		} catch(Exception e) {
 			e.printStackTrace();
 		}
@@ -65,16 +101,27 @@ public class Client extends Thread{
 			this.clientPort = clientPort;
 			this.fileName = fileName;
 		
-			// Two sockets one for sending ACKs and one for receiving data from server.
-			recivingSocket = new DatagramSocket(this.clientPort);
-			sendingSocket = new DatagramSocket();
-		} catch (SocketException e) {
-			e.printStackTrace();
-		} catch (UnknownHostException e) {
+			this.openChannels();
+		} catch (IOException e) {
 			e.printStackTrace();
 		} 
 		
 	}
+	
+	/**
+	 * opens two channels, one for sending ACKs and one for receiving data from server.
+	 * @throws IOException if the client port can not be bound.
+	 */
+	private void openChannels() throws IOException {
+		this.serverAddress = new InetSocketAddress(this.serverIP, this.serverPort & 0xFFFF);
+		this.recivingChannel = DatagramChannel.open();
+		this.recivingChannel.bind(new InetSocketAddress(this.clientPort & 0xFFFF));
+		this.reciver = new BatchedChannel(this.recivingChannel, 0, 1);   // only receives.
+		this.reciveSelector = Selector.open();
+		this.recivingChannel.register(this.reciveSelector, SelectionKey.OP_READ);
+		this.sendingChannel = DatagramChannel.open();
+		this.sender = new BatchedChannel(this.sendingChannel, 2 * (TCPPacket.MAX_DATA_SIZE + TCPPacket.EXTENDED_HEADER_SIZE), 64);
+	}
 
 	/**
 	 * starts the client, requests the file and then starts two threads, the first threads receives the 
@@ -84,28 +131,69 @@ public class Client extends Thread{
 	public void run() {
 		try {
 			ClientDataHandler handler = new ClientDataHandler();   // handles receiving data.
-			ClientACKHandler ackHandler = new ClientACKHandler();  // handles sending ACKs.
+			Thread dataThread = WorkerThreads.newThread("client data handler", this.virtualThreads, handler);
+			this.ackThread = WorkerThreads.newThread("client ACK handler", this.virtualThreads, new ClientACKHandler());
+			
+			if (this.probePacketSize) {
+				this.packetSize = this.probePacketSize();
+			}
+			// a virtual thread waits in a blocking receive, waiting in a selector would hold on to its carrier thread.
+			if (this.virtualThreads) {
+				this.reciveSelector.close();
+				this.reciveSelector = null;
+				this.recivingChannel.configureBlocking(true);
+			}
+			// the receive window holds as many packets of the asked size as the memory for them allows, a server that
+			// only knows the original format sends packets of its default size. the pool holds the buffers of a window
+			// and the one a packet is received into, so it does not grow past the memory unless the window is at its least.
+			int bufferSize = Math.max(this.packetSize, FileHandler.DEFAULT_PACKET_SIZE) + TCPPacket.EXTENDED_HEADER_SIZE;
+			int windowPackets = Math.min(MAX_RECEIVE_WINDOW, this.receiveBufferBytes / bufferSize);
+			this.receiveWindowSize = Math.max(MIN_RECEIVE_WINDOW, windowPackets - windowPackets % 64);   // the ACK window rounds up to 64.
+			this.recivedPacketNumbers = new AckWindow(this.receiveWindowSize);
+			this.packetBuffers = new BufferPool(bufferSize, 64, this.recivedPacketNumbers.getCapacity() + 1);
+			log("client receive window of " + this.recivedPacketNumbers.getCapacity() + " packets");
 			
-			// Create a new packet and add the needed file name to it.
+			// leave room in the socket for a window of large packets, the system may grant less.
+			int windowBytes = 64 * (this.packetSize + TCPPacket.EXTENDED_HEADER_SIZE);
+			if (this.recivingChannel.getOption(StandardSocketOptions.SO_RCVBUF) < windowBytes) {
+				this.recivingChannel.setOption(StandardSocketOptions.SO_RCVBUF, windowBytes);
+			}
+			
+			// Create a new packet and add the needed file name to it, the extended packet asks for 32 bit sequance
+			// numbers and for the packet size.
 			byte[] fileNameBuffer = this.fileName.getBytes();
-			TCPPacket filePacket = new TCPPacket(this.clientPort, this.serverPort,(short) 0, fileNameBuffer);
+			TCPPacket filePacket = new TCPPacket(this.clientPort, this.serverPort, this.packetSize, this.transferId, fileNameBuffer);
 			filePacket.setFileName(this.fileName);
-			byte[] filePacketBytes = filePacket.encode();
-			DatagramPacket fileNamePacket = new DatagramPacket(filePacketBytes, filePacketBytes.length, serverIP, this.serverPort);
+			TCPPacket oldFilePacket = new TCPPacket(this.clientPort, this.serverPort,(short) 0, fileNameBuffer);
+			oldFilePacket.setFileName(this.fileName);
 			
-			handler.start();
-			ackHandler.start();
+			dataThread.start();
+			this.ackThread.start();
 			
-			// Keep sending the packet every 5 seconds until the handler starts receiving.
+			// Keep sending the packet every 2 seconds until the handler starts receiving, a server that does
+			// not answer the extended requests is asked with the old packet format.
+			int requests = 0;
 			while(!handler.isReciving()) {
-				this.sendingSocket.send(fileNamePacket);
+				byte[] filePacketBytes = requests < this.extendedRequests ? filePacket.encode() : oldFilePacket.encode();
+				this.sender.send(filePacketBytes, this.serverAddress);
+				this.sender.flush();
 				System.out.println("client sent file name");
+				requests++;
 				Thread.sleep(2000);
 			}
 			
 			// wait for both handlers to finish before exiting.
-			handler.join();
-			ackHandler.join();
+			dataThread.join();
+			this.ackThread.join();
+			log("client data " + this.reciver);
+			log("client ACKs " + this.sender);
+			log(String.format("client CPU: data handler %.1f ms, ACK handler %.1f ms, transfer %.1f ms",
+					this.dataHandlerCpu / 1e6, this.ackHandlerCpu / 1e6, this.getTransferTime() / 1e6));
+			if (this.reciveSelector != null) {
+				this.reciveSelector.close();
+			}
+			this.recivingChannel.close();
+			this.sendingChannel.close();
 			writeFile();
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -113,43 +201,121 @@ public class Client extends Thread{
 	}
 	
 	/**
-	 * writes the received array of bytes to file and then decompresses the file.
+	 * finds the largest packet size that reaches the server and comes back, probes are sent with the
+	 * sizes that fill the MTUs of loopback, jumbo frames and ethernet, from the largest down. there is
+	 * no way to forbid fragmentation from java, so a size passes only if every one of its probes comes
+	 * back, a size whose probes are fragmented loses some of them once a fragment is lost.
+	 * @return the largest size that passed, or the configured packet size if no larger size passed.
 	 */
-	public void writeFile() {
-		ArrayList<Byte> byteArrayList = new ArrayList<Byte>();
-		ArrayList<TCPPacket> filePackets = new ArrayList<TCPPacket>();
-		HuffmanCompressor huffman = new HuffmanCompressor();
+	public int probePacketSize() {
+		ByteBuffer probeBuffer = ByteBuffer.allocateDirect(TCPPacket.MAX_DATA_SIZE + TCPPacket.EXTENDED_HEADER_SIZE);
+		int probeNumber = 0;
 		
-		while(!this.recivedPackets.isEmpty()) {
-			filePackets.add(this.recivedPackets.poll());
+		try {
+			for (int mtu: PROBE_MTUS) {
+				int size = Math.min(mtu - IP_UDP_HEADER_SIZE - TCPPacket.EXTENDED_HEADER_SIZE, TCPPacket.MAX_DATA_SIZE);
+				if (size <= this.packetSize) {
+					break;
+				}
+				
+				int passed = 0;
+				while (passed < this.probeCount) {
+					probeNumber++;
+					TCPPacket probePacket = new TCPPacket(this.clientPort, this.serverPort, probeNumber, this.transferId, new byte[size]);
+					probePacket.setProbe(true);
+					byte[] buffer = probePacket.encode();
+					this.sender.send(buffer, this.serverAddress);
+					this.sender.flush();
+					if (!this.receiveProbe(probeBuffer, probeNumber)) {
+						break;
+					}
+					passed++;
+				}
+				
+				if (passed == this.probeCount) {
+					System.out.println("client probed packet size " + size);
+					return size;
+				}
+				System.out.println("client probe of " + size + " bytes lost");
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
 		}
 		
-		filePackets.sort(null);
+		return this.packetSize;
+	}
+	
+	/**
+	 * waits for a probe to come back, the echoes of earlier probes are skipped.
+	 * @param buffer the buffer to receive into.
+	 * @param probeNumber the number of the probe.
+	 * @return true if the probe came back in time.
+	 */
+	private boolean receiveProbe(ByteBuffer buffer, int probeNumber) throws IOException {
+		long deadline = System.nanoTime() + this.probeTimeOut * 1000000L;
 		
-		for (int i = 0; i < filePackets.size(); i++) {
-			byte[] bytes = filePackets.get(i).getData();
-			for (int j = 0; j < bytes.length; j++) {
-				byteArrayList.add(bytes[j]);
+		while (true) {
+			long wait = (deadline - System.nanoTime()) / 1000000;
+			if (wait <= 0) {
+				return false;
+			}
+			
+			this.reciveSelector.select(wait);
+			this.reciveSelector.selectedKeys().clear();
+			this.reciver.receive(buffer, (datagram, sender) -> {
+				TCPPacket probePacket = new TCPPacket();
+				probePacket.decode(datagram);
+				if (probePacket.isProbe() && !probePacket.isCorrupted() && probePacket.getTransferId() == this.transferId) {
+					this.lastEchoedProbe = Math.max(this.lastEchoedProbe, probePacket.getSequanceNumber());
+				}
+			});
+			if (this.lastEchoedProbe == probeNumber) {
+				return true;
 			}
 		}
-		
-		byte[] byteArray = new byte[byteArrayList.size()];
-		for (int i = 0; i < byteArrayList.size(); i++) {
-			byteArray[i] = byteArrayList.get(i).byteValue();
-		}
-		
-		File sourceFile = new File(this.fileName);
-		String fileName = sourceFile.getName().substring(0, sourceFile.getName().lastIndexOf("."));
+	}
+	
+	/**
+	 * closes the received file, whose data was written while it was received, and then decompresses it.
+	 */
+	public void writeFile() {
+		HuffmanCompressor huffman = new HuffmanCompressor();
+		log("client " + this.recivedPackets);
+		log("client " + this.packetBuffers);
 		
 		try {
-			Path path = Paths.get("R" +  fileName + "-compressed.txt");
-			Files.write(path, byteArray);
-			huffman.deCommpressFile("R" +  fileName + "-compressed.txt");
+			this.recivedPackets.close();
+			// the server answers a file it can not load with an empty final packet.
+			if (new File(this.getReceivedFileName()).length() == 0) {
+				System.out.println("client received an empty file, the server could not load " + this.fileName);
+			}
+			else if (this.decompress) {
+				huffman.deCommpressFile(this.getReceivedFileName());
+			}
 		} catch(Exception e) {
 			e.printStackTrace();
 		}
 	}
 	
+	/**
+	 * returns the time in nanoseconds from the first to the last received packet.
+	 */
+	public long getTransferTime() {
+		return this.lastPacketTime - this.firstPacketTime;
+	}
+	
+	/**
+	 * returns the name of the file the received compressed data is written to.
+	 */
+	public String getReceivedFileName() {
+		if (this.receivedFileName != null) {
+			return this.receivedFileName;
+		}
+		File sourceFile = new File(this.fileName);
+		String fileName = sourceFile.getName().substring(0, sourceFile.getName().lastIndexOf("."));
+		return "R" +  fileName + "-compressed.txt";
+	}
+	
 	/**
 	 * simulates the action of dropping packets in a channel, it returns a boolean that describes 
 	 * if the received packet was dropped in the channel.
@@ -192,6 +358,68 @@ public class Client extends Thread{
 		this.corruptProbability = corruptProbability;
 	}
 
+	public void setAckEvery(int ackEvery) {
+		this.ackEvery = ackEvery;
+	}
+
+	public void setAckDelay(int ackDelay) {
+		this.ackDelay = ackDelay;
+	}
+
+	public void setSpinningAckHandler(boolean spinningAckHandler) {
+		this.spinningAckHandler = spinningAckHandler;
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	public void setDecompress(boolean decompress) {
+		this.decompress = decompress;
+	}
+
+	public void setReceivedFileName(String receivedFileName) {
+		this.receivedFileName = receivedFileName;
+	}
+
+	/**
+	 * returns the CPU time of the current thread in nanoseconds, or 0 if it can not be measured,
+	 * which is the case for virtual threads.
+	 */
+	static long getThreadCpuTime() {
+		try {
+			return Math.max(0, ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime());
+		} catch (UnsupportedOperationException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * prints a message about a packet when the client is verbose.
+	 * @param message the message.
+	 */
+	void log(String message) {
+		if (this.verbose) {
+			System.out.println(message);
+		}
+	}
+
+	public void setPacketSize(int packetSize) {
+		this.packetSize = packetSize;
+	}
+
+	public void setReceiveBufferBytes(int receiveBufferBytes) {
+		this.receiveBufferBytes = receiveBufferBytes;
+	}
+
+	public void setProbePacketSize(boolean probePacketSize) {
+		this.probePacketSize = probePacketSize;
+	}
+
 	/**
 	 * loads the client data from file.
 	 */
@@ -223,6 +451,15 @@ public class Client extends Thread{
 			tempString = read.readLine();
 			this.corruptProbability = Integer.parseInt(tempString);
 			
+			// the packet size is optional, probe looks for the largest size that gets through.
+			tempString = read.readLine();
+			if (tempString != null && tempString.trim().equals("probe")) {
+				this.probePacketSize = true;
+			}
+			else if (tempString != null && !tempString.trim().isEmpty()) {
+				this.packetSize = Integer.parseInt(tempString.trim());
+			}
+			
 			read.close();
 		} catch(Exception e) {
 			e.printStackTrace();
@@ -232,11 +469,10 @@ public class Client extends Thread{
 	/**
 	 *  this class handles receiving the requested file data from the servers.
 	 */
-	private class ClientDataHandler extends Thread {
+	private class ClientDataHandler implements Runnable {
 		boolean reciving = false;
 		boolean lastPacketRecived = false;
 		boolean allPacketsReceived = false;
-		short lastPacketNumber;
 		
 		/**
 		 * starts the client data handler, this thread receives the file packets from the server.
@@ -244,76 +480,124 @@ public class Client extends Thread{
 		@Override
 		public void run() {
 			try {
-				// Wait for the first packet to be received.
-				byte[] packetBuffer = new byte[packetSize + 12];
-				DatagramPacket recivedPacket = new DatagramPacket(packetBuffer, packetBuffer.length);
-				recivingSocket.receive(recivedPacket);
-				
-				// set the flag to stop requesting the file from the server.
-				this.reciving = true;
-				receivePacket(recivedPacket);
+				recivedPackets = new ReorderBuffer(Paths.get(getReceivedFileName()), recivedPacketNumbers.getCapacity(), packetBuffers);
 				
-				// Keep receiving the data packet until the last packet is received.
+				// Keep receiving the data packets until the last packet is received, every wakeup takes all
+				// the packets that are waiting. the buffer of a packet that is not kept is reused at once.
 				while(!lastPacketRecived || !allPacketsReceived) {
-					packetBuffer = new byte[packetSize + 12];
-					recivedPacket = new DatagramPacket(packetBuffer, packetBuffer.length);
-					recivingSocket.receive(recivedPacket);
-					receivePacket(recivedPacket);
+					if (reciveSelector != null) {
+						reciveSelector.select();
+						reciveSelector.selectedKeys().clear();
+					}
+					reciver.receive(packetBuffers, (buffer, sender) -> {
+						if (!receivePacket(buffer)) {
+							packetBuffers.release(buffer);
+						}
+					});
 				}
+				lastPacketTime = System.nanoTime();
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
+			dataHandlerCpu = getThreadCpuTime();
 		}
 
 		/**
-		 * receive and process a packet, this is done by creating an Ack. packet for each received data packet
-		 * and also mark the transmission as done once it ends.
+		 * receive and process a packet, this is done by marking the packet as received and asking the Ack.
+		 * handler for an Ack. packet, and also mark the transmission as done once it ends.
 		 * @param recivedDatagram the received Datagram that was received.
+		 * @return true if the packet is kept, its data stays in the buffer of the datagram until it is
+		 * written in order.
+		 * @throws IOException if the data can not be written.
 		 */
-		public void receivePacket(DatagramPacket recivedDatagram) {
-			// Decode the received packet.
-			byte[] encodedData = recivedDatagram.getData();
+		public boolean receivePacket(ByteBuffer recivedDatagram) throws IOException {
+			// Decode the received packet, an echo of a probe that came back late is skipped.
 			TCPPacket recivedPacket = new TCPPacket();
-			recivedPacket.decode(encodedData);
+			recivedPacket.decodeInPlace(recivedDatagram);
+			if (recivedPacket.isProbe()) {
+				return false;
+			}
+			
+			// set the flag to stop requesting the file from the server, the first packet decides the packet format.
+			if (!this.reciving) {
+				extended = recivedPacket.isExtended();
+				firstPacketTime = System.nanoTime();
+				this.reciving = true;
+			}
 			
 			if (dropPacket(lossProbability)) {
-				System.out.println("packet " + recivedPacket.getSequanceNumber() + " lost");
-				return;
+				log("packet " + recivedPacket.getSequanceNumber() + " lost");
+				return false;
 			}
 			else if (corruptPacket(corruptProbability)) {
-				System.out.println("packet " + recivedPacket.getSequanceNumber() + " corrupted");
+				log("packet " + recivedPacket.getSequanceNumber() + " corrupted");
 				recivedPacket.setCheckSum((short) -1);
 			}
 			
+			boolean kept = false;
 			if (!recivedPacket.isCorrupted()) {
-				System.out.println("client received packet " + recivedPacket.getSequanceNumber());
+				// a packet of another format or transfer belongs to a request that was answered twice.
+				if (recivedPacket.isExtended() != extended || recivedPacket.getTransferId() != (extended ? transferId : 0)) {
+					return false;
+				}
+				log("client received packet " + recivedPacket.getSequanceNumber());
+				int sequanceNumber = recivedPacket.getSequanceNumber();
+				if (!extended) {
+					// the old format carries 16 bits, take the number closest to the first missing packet.
+					int base = recivedPacketNumbers.getBase();
+					sequanceNumber = base + (short) (sequanceNumber - base);
+					recivedPacket.setSequanceNumber(sequanceNumber);
+				}
 				
-				// Create a new ACK packet.
-				short sequanceNumber = recivedPacket.getSequanceNumber();
-				ACKPacket ackPacket = new ACKPacket(sequanceNumber, clientPort);
+				// a packet too far ahead of the first missing one is dropped without an ACK, the server sends it again.
+				if (recivedPacketNumbers.isBeyond(sequanceNumber)) {
+					return false;
+				}
 				
-				// Add the packet if not already received.
-				if (!recivedPacketNumbers.contains(sequanceNumber)) {
-					recivedPacketNumbers.add(sequanceNumber);
-					recivedPackets.offer(recivedPacket);
+				// Add the packet if not already received, a packet out of order or a duplicate is acknowledged at once.
+				boolean inOrder = sequanceNumber == recivedPacketNumbers.getBase();
+				if (recivedPacketNumbers.mark(sequanceNumber)) {
+					recivedPackets.add(sequanceNumber, recivedPacket);
+					kept = true;
+					recivedPacketNumbers.advance();
+					highestPacketNumber = Math.max(highestPacketNumber, sequanceNumber);
+				}
+				else {
+					inOrder = false;
 				}
 				
 				// Set the flag if it is the last  packet.
 				if (recivedPacket.isFinalPacket()) {
 					lastPacketRecived = true;
-					ackPacket.setFinalACKPacket(true);
-					this.lastPacketNumber = sequanceNumber;
+					lastPacketNumber = sequanceNumber;
+				}
+				
+				// a server of the old format only understands one ACK packet for each received packet.
+				if (!extended) {
+					packetsToAcknowledge.add(sequanceNumber);
+					inOrder = false;   // sends the ACK at once.
 				}
 				
 				if (this.lastPacketRecived) {
-					if (recivedPacketNumbers.size() == lastPacketNumber + 1) {
+					if (recivedPacketNumbers.getBase() == lastPacketNumber + 1) {
 						this.allPacketsReceived = true;
 					}
 				}
 				
-				// Add packet to queue.
-				ackQueue.offer(ackPacket);
+				// Ask the ACK handler for an ACK packet, it is woken once an ACK is due or the first
+				// packet starts waiting for one.
+				if (unacknowledgedPackets.get() == 0) {
+					firstUnacknowledgedTime = System.nanoTime();
+				}
+				if (!inOrder || this.lastPacketRecived) {
+					ackNow = true;
+				}
+				int waitingPackets = unacknowledgedPackets.incrementAndGet();
+				if (waitingPackets == 1 || waitingPackets >= ackEvery || ackNow) {
+					LockSupport.unpark(ackThread);
+				}
 			}
+			return kept;
 		}
 		
 		public boolean isReciving() {
@@ -322,48 +606,102 @@ public class Client extends Thread{
 	}
 	
 	/**
-	 * starts the client Ack. handler, this thread sends an Ack. packet to the server for every
-	 * data packet received.
+	 * starts the client Ack. handler, this thread sends Ack. packets to the server for the received
+	 * data packets. one Ack. packet acknowledges every packet before the first missing one and carries
+	 * the blocks of packets received after it, it is sent once ackEvery packets are waiting for it,
+	 * once the oldest of them waited ackDelay milliseconds or at once if a packet arrived out of order.
+	 * between ACKs the thread sleeps until the data handler wakes it or the delay of the oldest
+	 * packet ends. a server of the old format is sent one original ACK packet for each received
+	 * packet at once.
 	 */
-	private class ClientACKHandler extends Thread{
-		boolean lastACKPacketSent = false;
+	private class ClientACKHandler implements Runnable {
 		boolean allACKPacketSent = false;
-		short lastACKPacketNumber;
+		int[] blocks = new int[2 * ACKPacket.MAX_BLOCKS];
 		
 		/**
-		 * start thr client Ack. handler, this thread sends an Ack. packet for every received 
-		 * data packet.
+		 * start thr client Ack. handler, this thread sends an Ack. packet for the received data packets.
 		 */
 		@Override
 		public void run() {
 			try {
-				while(!lastACKPacketSent || !allACKPacketSent) {
-					if (ackQueue.isEmpty()) {
+				while(!allACKPacketSent) {
+					int waitingPackets = unacknowledgedPackets.get();
+					if (waitingPackets == 0) {
+						this.await(-1);
 						continue;
 					}
-					// get next ACK packetm encode it and send it.
-					ACKPacket ackPacket = ackQueue.poll();
-					byte[] buffer = ackPacket.encode();
-					DatagramPacket Packet = new DatagramPacket(buffer, buffer.length, serverIP, serverPort);
-					sendingSocket.send(Packet);
-					System.out.println("client sent ACK packet " + ackPacket.getAckNumber());
+					long delay = ackDelay * 1000000L - (System.nanoTime() - firstUnacknowledgedTime);
+					if (!ackNow && waitingPackets < ackEvery && delay > 0) {
+						this.await(delay);
+						continue;
+					}
+					ackNow = false;
+					unacknowledgedPackets.set(0);
 					
-					// If final packet sent break.
-					if (ackPacket.isFinalACKPacket()) {
-						this.lastACKPacketSent = true;
-						this.lastACKPacketNumber = ackPacket.getAckNumber();
+					if (!extended) {
+						this.sendPacketACKs();
+						continue;
 					}
 					
-					if (lastACKPacketSent) {
-						if (recivedPacketNumbers.size() == lastACKPacketNumber + 1) {
-							this.allACKPacketSent = true;
-						}
+					// build the ACK packet from the received packets, encode it and send it.
+					int lastPacket = lastPacketNumber;
+					int ackNumber = recivedPacketNumbers.getBase();
+					int blockCount = recivedPacketNumbers.getBlocks(highestPacketNumber + 1, this.blocks, ACKPacket.MAX_BLOCKS);
+					ACKPacket ackPacket = new ACKPacket(ackNumber, clientPort, transferId, this.blocks, blockCount);
+					ackPacket.setFinalACKPacket(lastPacket >= 0);
+					byte[] buffer = ackPacket.encode();
+					sender.send(buffer, serverAddress);
+					sender.flush();
+					log("client sent ACK packet " + ackNumber);
+					
+					// If every packet is acknowledged break.
+					if (lastPacket >= 0 && ackNumber == lastPacket + 1) {
+						this.allACKPacketSent = true;
 					}
 				}
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
+			ackHandlerCpu = getThreadCpuTime();
+		}
+		
+		/**
+		 * sends the original 7 byte ACK packet for every packet received since the last call, the
+		 * ACK of the last packet carries the final flag like it did before the selective ACKs.
+		 * @throws IOException if the channel fails.
+		 */
+		private void sendPacketACKs() throws IOException {
+			Integer number;
+			while ((number = packetsToAcknowledge.poll()) != null) {
+				ACKPacket ackPacket = new ACKPacket((short) number.intValue(), clientPort);
+				ackPacket.setFinalACKPacket(number.intValue() == lastPacketNumber);
+				sender.send(ackPacket.encode(), serverAddress);
+				log("client sent ACK packet " + number);
+			}
+			sender.flush();
+			
+			// the packets that arrive after the last ACK wait in the queue for the next call.
+			int lastPacket = lastPacketNumber;
+			if (lastPacket >= 0 && recivedPacketNumbers.getBase() == lastPacket + 1 && packetsToAcknowledge.isEmpty()) {
+				this.allACKPacketSent = true;
+			}
 		}
 		
+		/**
+		 * waits until the data handler wakes this thread or the given time passed, a wakeup may also
+		 * come early so the caller checks again.
+		 * @param nanos the longest time to wait in nanoseconds, negative to wait for a wakeup.
+		 */
+		private void await(long nanos) {
+			if (spinningAckHandler) {
+				return;
+			}
+			if (nanos < 0) {
+				LockSupport.park(this);
+			}
+			else {
+				LockSupport.parkNanos(this, nanos);
+			}
+		}
 	}
 }
@@ -0,0 +1,34 @@
+package rdt;
+/**
+ * the compressed data of a file split into packets, shared by every session that sends the file.
+ * the frames of a session are written from it one at a time by a PacketSource.
+ */
+public interface CompressedFile {
+
+	/**
+	 * writes the encoded frame of a packet with the ports and the format of one session.
+	 * @param index the index of the packet, which is also its sequance number.
+	 * @param sourcePort the port that the packet will be sent from.
+	 * @param destinationPort the port that the packet will be sent to.
+	 * @param extended true to write the frame in the extended format.
+	 * @param transferId the id of the transfer, only written in the extended format.
+	 * @param frame an array to reuse for the frame, may be null.
+	 * @return the frame, the given array if it has the length of the frame or a new array.
+	 */
+	byte[] writeFrame(int index, short sourcePort, short destinationPort, boolean extended, int transferId, byte[] frame);
+
+	/**
+	 * returns the number of packets.
+	 */
+	int size();
+
+	/**
+	 * returns the number of bytes of compressed data.
+	 */
+	long getDataSize();
+
+	/**
+	 * called when the file is removed from the cache, sessions that still send it keep working.
+	 */
+	void release();
+}
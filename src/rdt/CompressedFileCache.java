@@ -0,0 +1,274 @@
+package rdt;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import huffman.HuffmanCompressor;
+/**
+ * a cache of compressed files that is shared by all the clients of a server.
+ * a file is compressed once and its packet frames are kept until the file changes or the
+ * cache needs room for other files, the least recently used files are evicted first.
+ * files from the streaming threshold on are compressed into a temporary file that is mapped
+ * instead of being kept in memory.
+ * clients that request a file while it is still being compressed wait for that compression
+ * instead of starting their own. a file is split into packets of the size that its client asked
+ * for, every packet size of a file has an entry of its own.
+ */
+public class CompressedFileCache {
+	private final ConcurrentHashMap<Key, FutureTask<CompressedFile>> entries = new ConcurrentHashMap<Key, FutureTask<CompressedFile>>();
+	private final LinkedHashMap<Key, Long> usage = new LinkedHashMap<Key, Long>(16, 0.75f, true);   // guarded by itself, in access order.
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private long capacity;
+	private long usedBytes = 0;
+	private int packetSize;
+	private long streamingThreshold = 16 * 1024 * 1024;
+
+	/**
+	 * creates a new cache.
+	 * @param capacity the maximum number of bytes of compressed files to keep, in memory or in temporary files.
+	 * @param packetSize the number of data bytes in each packet when a request does not set it.
+	 */
+	public CompressedFileCache(long capacity, int packetSize) {
+		this.capacity = capacity;
+		this.packetSize = packetSize;
+	}
+
+	/**
+	 * returns a compressed file, the file is compressed only if it is not in the cache or has
+	 * been changed since it was compressed.
+	 * @param filePath the path to the input file.
+	 * @return the compressed file.
+	 * @throws IOException if the file can not be read or compressed.
+	 */
+	public CompressedFile get(String filePath) throws IOException {
+		return this.get(filePath, this.packetSize);
+	}
+
+	/**
+	 * returns a compressed file split into packets of the given size, the file is compressed only
+	 * if it is not in the cache with this packet size or has been changed since it was compressed.
+	 * @param filePath the path to the input file.
+	 * @param packetSize the number of data bytes in each packet.
+	 * @return the compressed file.
+	 * @throws IOException if the file can not be read or compressed.
+	 */
+	public CompressedFile get(String filePath, int packetSize) throws IOException {
+		Path path = Paths.get(filePath).toAbsolutePath().normalize();
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		Key key = new Key(path, attributes.size(), attributes.lastModifiedTime().toMillis(), packetSize);
+
+		FutureTask<CompressedFile> task = this.entries.get(key);
+		if (task == null) {
+			FutureTask<CompressedFile> newTask = new FutureTask<CompressedFile>(() -> this.compress(path, attributes.size(), packetSize));
+			task = this.entries.putIfAbsent(key, newTask);
+
+			// only the request that added the entry compresses the file.
+			if (task == null) {
+				task = newTask;
+				this.misses.incrementAndGet();
+				this.removeOldVersions(key);
+				task.run();
+				this.account(key, task);
+			}
+			else {
+				this.hits.incrementAndGet();
+			}
+		}
+		else {
+			this.hits.incrementAndGet();
+			synchronized (this.usage) {
+				this.usage.get(key);
+			}
+		}
+
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			this.entries.remove(key, task);
+			throw new IOException("could not compress " + filePath, e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while compressing " + filePath, e);
+		}
+	}
+
+	/**
+	 * compresses a file and splits it into frames, or into a mapped temporary file if it is
+	 * not smaller than the streaming threshold.
+	 * @param path the path to the input file.
+	 * @param size the size of the input file.
+	 * @param packetSize the number of data bytes in each packet.
+	 * @return the compressed file.
+	 * @throws IOException if the temporary file can not be written.
+	 */
+	private CompressedFile compress(Path path, long size, int packetSize) throws IOException {
+		if (size >= this.streamingThreshold) {
+			MappedCompressedFile file = MappedCompressedFile.create(path.toString(), packetSize);
+			System.out.println("number of bytes in file " + file.getDataSize() + ", streamed from a temporary file");
+			return file;
+		}
+
+		byte[] byteArray = new HuffmanCompressor().compressToBytes(path.toString());
+		System.out.println("number of bytes in file " + byteArray.length);
+		return PacketFrames.encode(byteArray, packetSize);
+	}
+
+	/**
+	 * removes the entries of older versions of the file of a key, in every packet size.
+	 * @param key the key of the current version.
+	 */
+	private void removeOldVersions(Key key) {
+		for (Key oldKey: this.entries.keySet()) {
+			if (oldKey.path.equals(key.path) && (oldKey.size != key.size || oldKey.modifiedTime != key.modifiedTime)) {
+				this.remove(oldKey);
+			}
+		}
+	}
+
+	/**
+	 * adds the size of a new entry to the used bytes and evicts the least recently used
+	 * entries until the cache fits its capacity again, the newest entry is always kept.
+	 * @param key the key of the new entry.
+	 * @param task the finished compression of the entry.
+	 */
+	private void account(Key key, FutureTask<CompressedFile> task) {
+		long weight;
+		try {
+			CompressedFile file = task.get();
+			weight = file.getDataSize() + (long) file.size() * TCPPacket.HEADER_SIZE;
+		} catch (Exception e) {
+			return;
+		}
+
+		synchronized (this.usage) {
+			if (this.entries.get(key) != task) {
+				return;
+			}
+			this.usage.put(key, weight);
+			this.usedBytes += weight;
+
+			Iterator<Map.Entry<Key, Long>> iterator = this.usage.entrySet().iterator();
+			while (this.usedBytes > this.capacity && this.usage.size() > 1) {
+				Map.Entry<Key, Long> eldest = iterator.next();
+				iterator.remove();
+				this.usedBytes -= eldest.getValue();
+				release(this.entries.remove(eldest.getKey()));
+				this.evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * removes an entry from the cache.
+	 * @param key the key of the entry.
+	 */
+	private void remove(Key key) {
+		synchronized (this.usage) {
+			Long weight = this.usage.remove(key);
+			if (weight != null) {
+				this.usedBytes -= weight;
+			}
+			release(this.entries.remove(key));
+		}
+	}
+
+	/**
+	 * releases the file of a removed entry once its compression finished.
+	 * @param task the compression of the entry, may be null.
+	 */
+	private static void release(FutureTask<CompressedFile> task) {
+		if (task != null && task.isDone()) {
+			try {
+				task.get().release();
+			} catch (Exception e) {
+				// the compression failed, there is nothing to release.
+			}
+		}
+	}
+
+	/**
+	 * sets the maximum number of bytes to keep, the cache shrinks on the next compression.
+	 * @param capacity the capacity in bytes.
+	 */
+	public void setCapacity(long capacity) {
+		synchronized (this.usage) {
+			this.capacity = capacity;
+		}
+	}
+
+	/**
+	 * sets the size from which input files are streamed from a temporary file.
+	 * @param streamingThreshold the size in bytes.
+	 */
+	public void setStreamingThreshold(long streamingThreshold) {
+		this.streamingThreshold = streamingThreshold;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getUsedBytes() {
+		synchronized (this.usage) {
+			return usedBytes;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "file cache: " + this.getHits() + " hits, " + this.getMisses() + " misses, "
+				+ this.getEvictions() + " evictions, " + this.getUsedBytes() + " bytes used";
+	}
+
+	/**
+	 * identifies one version of a file split into packets of one size.
+	 */
+	private static class Key {
+		final Path path;
+		final long size;
+		final long modifiedTime;
+		final int packetSize;
+
+		Key(Path path, long size, long modifiedTime, int packetSize) {
+			this.path = path;
+			this.size = size;
+			this.modifiedTime = modifiedTime;
+			this.packetSize = packetSize;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Key)) {
+				return false;
+			}
+			Key that = (Key) object;
+			return this.path.equals(that.path) && this.size == that.size && this.modifiedTime == that.modifiedTime
+					&& this.packetSize == that.packetSize;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((this.path.hashCode() * 31 + Long.hashCode(this.size)) * 31 + Long.hashCode(this.modifiedTime)) * 31 + this.packetSize;
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package rdt;
+/**
+ * decides how many packets a session may have sent but not acknowledged. the session reports
+ * the packets that its ACKs acknowledge and the losses that its timers detect, and sends no more
+ * packets than the window allows.
+ */
+public interface CongestionControl {
+
+	/**
+	 * called when an ACK acknowledges packets for the first time.
+	 * @param ackedPackets the number of newly acknowledged packets.
+	 * @param now the current time in milliseconds.
+	 */
+	void onAck(int ackedPackets, long now);
+
+	/**
+	 * called when a packet is found lost while other packets are still being acknowledged.
+	 * @param now the current time in milliseconds.
+	 */
+	void onLoss(long now);
+
+	/**
+	 * called when the retransmission timer finishes without any packet being acknowledged.
+	 * @param now the current time in milliseconds.
+	 */
+	void onTimeout(long now);
+
+	/**
+	 * returns the congestion window in packets, at least 1 and at most the largest window.
+	 */
+	int getWindow();
+
+	String getName();
+}
@@ -0,0 +1,104 @@
+package rdt;
+/**
+ * congestion control in the style of CUBIC (RFC 8312). after a loss the window grows along a
+ * cubic function of the time since the loss, quickly back towards the window at which the loss
+ * happened, slowly around it and then quickly again beyond it, so the growth does not depend on
+ * the round trip time. the window never grows slower than Reno would (the TCP friendly region).
+ */
+public class CubicCongestionControl implements CongestionControl {
+	static final double C = 0.4;
+	static final double BETA = 0.7;
+
+	private final int maxWindow;
+	private double window;
+	private double slowStartThreshold;
+	private double lossWindow = 0;       // the window at the last loss, W_max.
+	private double renoWindow = 0;       // the window Reno would have, W_est.
+	private double timeToLossWindow = 0; // the seconds after the epoch at which the cubic reaches W_max, K.
+	private long epochStart = -1;        // the start of the current growth in milliseconds, -1 until the first ACK after a loss.
+
+	/**
+	 * creates a new CUBIC congestion control.
+	 * @param maxWindow the largest window, the window of the receiver.
+	 */
+	public CubicCongestionControl(int maxWindow) {
+		this.maxWindow = Math.max(1, maxWindow);
+		this.window = Math.min(RenoCongestionControl.INITIAL_WINDOW, this.maxWindow);
+		this.slowStartThreshold = this.maxWindow;
+	}
+
+	@Override
+	public void onAck(int ackedPackets, long now) {
+		if (this.window < this.slowStartThreshold) {
+			this.window = Math.min(this.window + ackedPackets, this.maxWindow);
+			return;
+		}
+
+		if (this.epochStart < 0) {
+			this.epochStart = now;
+			this.renoWindow = this.window;
+			if (this.window < this.lossWindow) {
+				this.timeToLossWindow = Math.cbrt((this.lossWindow - this.window) / C);
+			}
+			else {
+				this.timeToLossWindow = 0;
+				this.lossWindow = this.window;
+			}
+		}
+
+		double time = (now - this.epochStart) / 1000.0 - this.timeToLossWindow;
+		double target = C * time * time * time + this.lossWindow;
+		for (int i = 0; i < ackedPackets; i++) {
+			if (target > this.window) {
+				this.window += (target - this.window) / this.window;
+			}
+			else {
+				this.window += 0.01 / this.window;
+			}
+			this.renoWindow += 3 * (1 - BETA) / (1 + BETA) / this.window;
+		}
+
+		this.window = Math.min(Math.max(this.window, this.renoWindow), this.maxWindow);
+	}
+
+	@Override
+	public void onLoss(long now) {
+		this.reduce();
+		this.window = Math.min(this.slowStartThreshold, this.maxWindow);
+	}
+
+	@Override
+	public void onTimeout(long now) {
+		this.reduce();
+		this.window = 1;
+	}
+
+	/**
+	 * remembers the window of the loss and lowers the threshold, a loss before the window grew
+	 * back to the last loss window lowers the loss window further (fast convergence).
+	 */
+	private void reduce() {
+		if (this.window < this.lossWindow) {
+			this.lossWindow = this.window * (1 + BETA) / 2;
+		}
+		else {
+			this.lossWindow = this.window;
+		}
+		this.slowStartThreshold = Math.max(this.window * BETA, 2);
+		this.epochStart = -1;
+	}
+
+	@Override
+	public int getWindow() {
+		return Math.max(1, (int) this.window);
+	}
+
+	public double getLossWindow() {
+		return lossWindow;
+	}
+
+	@Override
+	public String getName() {
+		return "cubic";
+	}
+}
@@ -1,10 +1,5 @@
 package rdt;
 
-import java.io.File;
-import java.nio.file.Files;
-import java.util.ArrayList;
-
-import huffman.HuffmanCompressor;
 /**
  * this class is responsible for reading files and preprocessing them before they are
  * sent by the server.
@@ -12,13 +7,14 @@ import huffman.HuffmanCompressor;
  */
 public class FileHandler {
 	private static FileHandler instance = null;
-	HuffmanCompressor huffman = new HuffmanCompressor();
-	int packetSize = 1000;
+	static final int DEFAULT_PACKET_SIZE = 1000;
+	int packetSize = DEFAULT_PACKET_SIZE;   // the number of data bytes in a packet for clients that do not ask for a size.
+	CompressedFileCache cache = new CompressedFileCache(64 * 1024 * 1024, packetSize);
 	
 	/**
 	 * return an instance of this singleton class.
 	 */
-	public static FileHandler getFileHandler() {
+	public static synchronized FileHandler getFileHandler() {
 		if (instance == null) {
 			instance = new FileHandler();
 		}
@@ -26,67 +22,52 @@ public class FileHandler {
 	}
 	
 	/**
-	 * reads a file, compresses it and then split this file into an array of TCPPackets.
-	 * this method is synchronized.
+	 * returns the packets of the compressed file. files are compressed once and shared through
+	 * the file cache, each request only gets a packet source that writes the frames of its window
+	 * with its ports.
 	 * @param filePath the path to the input file.
+	 * @param packetSize the number of data bytes in each packet.
 	 * @param sourcePort the port that the packet will be sent from, must be set in the packet.
 	 * @param destinationPort the port that the packet will be sent to, must be set in the packet.
-	 * @return an arraylist of TCPPackets that the file has been divided into.
+	 * @param extended true to send the packets in the extended format.
+	 * @param transferId the id of the transfer, only sent in the extended format.
+	 * @param windowSize the number of frames the source keeps for retransmissions.
+	 * @return the packets that the file has been divided into, ready to be sent.
 	 */
-	public synchronized ArrayList<TCPPacket> getFilePackets(String filePath, short sourcePort, short destinationPort) {
-		byte[] byteArray = null;
-		byte[] tempArray = new byte[packetSize];
-		ArrayList<TCPPacket> filePackets = new ArrayList<TCPPacket>();
-		short sequanceNumber = 0;
-		int index = 0;
+	public PacketSource getFilePackets(String filePath, int packetSize, short sourcePort, short destinationPort, boolean extended, int transferId, int windowSize) {
+		CompressedFile file = null;
 		
 		try {
-			File sourceFile = new File (filePath);
-			String fileName = sourceFile.getName().substring(0, sourceFile.getName().lastIndexOf("."));
-			huffman.compressFile(filePath);
-			
-			File compressedFile = new File (fileName + "-compressed.txt");
-			byteArray = Files.readAllBytes(compressedFile.toPath());
-			System.out.println("number of bytes in file " + byteArray.length);
-			
-			if (byteArray.length < packetSize) {
-				tempArray = new byte[byteArray.length];
-				for (int i = 0; i < byteArray.length; i++) {
-					tempArray[i] = byteArray[i];
-				}
-				TCPPacket packet = new TCPPacket(sourcePort, destinationPort, sequanceNumber, tempArray);
-				filePackets.add(packet);
-			}
-			else {
-				for (int i = 0; i <= byteArray.length; i++) {
-					if (index == packetSize || i == byteArray.length) {
-						index = 0;
-						TCPPacket packet = new TCPPacket(sourcePort, destinationPort, sequanceNumber, tempArray);
-						filePackets.add(packet);
-						sequanceNumber++;
-
-						if (byteArray.length - i < packetSize) {
-							tempArray = new byte[byteArray.length - i];
-						}
-						else {
-							tempArray = new byte[packetSize];
-						}
-
-						if (i == byteArray.length) {
-							break;
-						}
-					}
-
-					tempArray[index] = byteArray[i];
-					index++;
-				}
-			}
+			file = this.cache.get(filePath, packetSize);
 		} catch(Exception e) {
 			e.printStackTrace();
+			// a file that can not be loaded is sent as a single empty final packet, so the client ends its
+			// transfer and the session is reaped by its ACK or by its timer like any other.
+			file = PacketFrames.encode(new byte[0], packetSize);
 		}
 		
-		System.out.println("number of packets " + filePackets.size());
-		filePackets.get(filePackets.size() - 1).setFinalPacket(true);
-		return filePackets;
+		System.out.println("number of packets " + file.size() + ", " + this.cache);
+		return new PacketSource(file, sourcePort, destinationPort, extended, transferId, windowSize);
+	}
+	
+	/**
+	 * sets the maximum number of bytes of compressed files kept in memory.
+	 * @param capacity the capacity in bytes.
+	 */
+	public void setCacheCapacity(long capacity) {
+		this.cache.setCapacity(capacity);
+	}
+	
+	/**
+	 * sets the size from which input files are compressed into a temporary file and streamed
+	 * from it instead of being kept in memory.
+	 * @param streamingThreshold the size in bytes.
+	 */
+	public void setStreamingThreshold(long streamingThreshold) {
+		this.cache.setStreamingThreshold(streamingThreshold);
+	}
+	
+	public CompressedFileCache getCache() {
+		return cache;
 	}
 }
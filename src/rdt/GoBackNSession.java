@@ -0,0 +1,153 @@
+package rdt;
+
+import java.io.IOException;
+import java.net.InetAddress;
+/**
+ * a session that sends data accourding to the go back n protocol. with a sliding window
+ * a new packet is sent as soon as the first packet of the window is acknowledged and the
+ * timer always times the first packet that is not acknowledged, otherwise the next window
+ * is only sent once every packet of the last one is acknowledged.
+ */
+class GoBackNSession extends Session {
+	int windowSize;
+	int currentBase = 0;
+	boolean lastPacketSent = false;
+	int windowEnd = 0;            // the window is every packet from the base of the ACK window up to here.
+	int unacknowledgedCount = 0;  // the packets in the window that are not acknowledged yet.
+	TimerWheel.Timeout timer = new TimerWheel.Timeout(this, 0);
+	AckWindow recivedACKNumbers;
+
+	/**
+	 * creates a new go back n session.
+	 * @param shard the shard of the server that owns this session.
+	 * @param receivedPacket the request packet sent by the client.
+	 * @param clientIP the IP of the client.
+	 * @param windowSize the largest number of packets activly being sent.
+	 */
+	GoBackNSession(ServerShard shard, TCPPacket receivedPacket, InetAddress clientIP, int windowSize) {
+		super(shard, receivedPacket, clientIP, windowSize);
+		this.windowSize = windowSize;
+		this.congestion = shard.server.createCongestionControl(windowSize);
+		this.recivedACKNumbers = new AckWindow(windowSize);
+	}
+
+	@Override
+	void sendFirstPackets() throws IOException {
+		this.sendWindow(this.currentBase, "sent");
+	}
+
+	/**
+	 * sends a window of packets starting at the given base, as many as the congestion window
+	 * allows, and restarts the timer.
+	 * @param base the first packet of the window.
+	 * @param action the word to log the sends with.
+	 */
+	private void sendWindow(int base, String action) throws IOException {
+		int windowLimit = Math.min(base + this.congestion.getWindow(), this.filePackets.size());
+		if (this.lastPacketSent) {
+			windowLimit = this.filePackets.size();
+		}
+		// going back resends every packet that was sent, even if the window shrank since.
+		windowLimit = Math.max(windowLimit, this.currentBase);
+
+		this.unacknowledgedCount = 0;
+		for (int i = base; i < windowLimit; i++) {
+			this.send(i, action);
+			if (!this.recivedACKNumbers.isMarked(i)) {
+				this.unacknowledgedCount++;
+			}
+		}
+		this.windowEnd = windowLimit;
+
+		this.currentBase = Math.max(this.currentBase, windowLimit);
+		if (windowLimit == this.filePackets.size()) {
+			this.lastPacketSent = true;
+		}
+
+		this.shard.timers.schedule(this.timer, this.rtt.getTimeOut());
+	}
+
+	/**
+	 * marks the acknowledged packet and slides the window, without a sliding window sends
+	 * the next window once every packet in the window is acknowledged.
+	 */
+	@Override
+	void acknowledge(int number) throws IOException {
+		if (number >= this.windowEnd || !this.recivedACKNumbers.mark(number)) {
+			return;
+		}
+
+		this.measure(number);
+		int base = this.recivedACKNumbers.getBase();
+		this.unacknowledgedCount--;
+		if (this.unacknowledgedCount == 0 && this.lastPacketSent) {
+			this.recivedACKNumbers.advance();
+			this.finish();
+		}
+		else if (this.server.slidingWindow) {
+			// the timer is restarted whenever the first packet of the window is acknowledged.
+			if (this.recivedACKNumbers.advance() != base) {
+				this.shard.timers.schedule(this.timer, this.rtt.getTimeOut());
+			}
+			this.slideWindow();
+		}
+		else {
+			this.recivedACKNumbers.advance();
+			if (this.unacknowledgedCount == 0) {
+				this.sendWindow(this.currentBase, "sent");
+			}
+		}
+	}
+
+	/**
+	 * sends the packets that the window allows and that were not sent yet, the window holds
+	 * as many packets after the first packet that is not acknowledged as the congestion window
+	 * allows.
+	 */
+	private void slideWindow() throws IOException {
+		int windowLimit = Math.min(this.recivedACKNumbers.getBase() + this.congestion.getWindow(), this.filePackets.size());
+
+		for (int i = this.currentBase; i < windowLimit; i++) {
+			this.send(i, "sent");
+			this.unacknowledgedCount++;
+		}
+		if (windowLimit > this.currentBase) {
+			this.currentBase = windowLimit;
+			this.windowEnd = windowLimit;
+		}
+		if (windowLimit == this.filePackets.size()) {
+			this.lastPacketSent = true;
+		}
+
+		if (!this.timer.isPending()) {
+			this.shard.timers.schedule(this.timer, this.rtt.getTimeOut());
+		}
+	}
+
+	@Override
+	int getFirstUnacknowledged() {
+		return this.recivedACKNumbers.getBase();
+	}
+
+	/**
+	 * when the timer finishes re-sends packets starting from 1st packet that is not ACK,
+	 * doubling the timeout and shrinking the congestion window to one packet.
+	 */
+	@Override
+	public void timeout(int number) throws IOException {
+		if (this.abandonIfIdle()) {
+			return;
+		}
+
+		if (this.unacknowledgedCount != 0) {
+			this.rtt.backoff();
+			this.reportLoss(true);
+			this.sendWindow(this.recivedACKNumbers.getBase(), "resent");
+		}
+	}
+
+	@Override
+	void cancelTimers() {
+		this.shard.timers.cancel(this.timer);
+	}
+}
@@ -0,0 +1,113 @@
+package rdt;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import huffman.HuffmanCompressor;
+/**
+ * a compressed file kept in a temporary file and mapped into memory, used for files that are too
+ * large to keep their frames in memory. a frame is encoded from the mapped data when a session
+ * sends its packet, so only the pages of the packets in flight have to be in memory. the file is
+ * mapped in regions of whole packets because a single mapping is limited to 2 GB.
+ */
+public class MappedCompressedFile implements CompressedFile {
+	private static final long REGION_SIZE = 1L << 30;
+
+	private final Path path;
+	private final long dataSize;
+	private final int packetSize;
+	private final int packetCount;
+	private final int packetsPerRegion;
+	private final MappedByteBuffer[] regions;
+
+	/**
+	 * compresses a file into a new temporary file and maps it. the file is read twice instead of
+	 * held in memory, so compressing it takes the same memory for every size.
+	 * @param filePath the path to the input file.
+	 * @param packetSize the maximum number of data bytes in one packet.
+	 * @return the mapped compressed file.
+	 * @throws IOException if the temporary file can not be written or mapped.
+	 */
+	public static MappedCompressedFile create(String filePath, int packetSize) throws IOException {
+		Path path = Files.createTempFile("rdt-compressed", ".bin");
+		path.toFile().deleteOnExit();
+
+		OutputStream output = new BufferedOutputStream(Files.newOutputStream(path));
+		try {
+			new HuffmanCompressor().compressStreaming(filePath, output);
+		} finally {
+			output.close();
+		}
+		return new MappedCompressedFile(path, packetSize);
+	}
+
+	/**
+	 * maps an existing compressed file.
+	 * @param path the path to the compressed file.
+	 * @param packetSize the maximum number of data bytes in one packet.
+	 * @throws IOException if the file can not be mapped.
+	 */
+	public MappedCompressedFile(Path path, int packetSize) throws IOException {
+		this.path = path;
+		this.packetSize = packetSize;
+		this.packetsPerRegion = (int) (REGION_SIZE / packetSize);
+		long regionBytes = (long) this.packetsPerRegion * packetSize;
+
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			this.dataSize = channel.size();
+			this.packetCount = (int) Math.max(1, (this.dataSize + packetSize - 1) / packetSize);
+			this.regions = new MappedByteBuffer[(int) Math.max(1, (this.dataSize + regionBytes - 1) / regionBytes)];
+			for (int i = 0; i < this.regions.length; i++) {
+				long start = i * regionBytes;
+				this.regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(regionBytes, this.dataSize - start));
+			}
+		} finally {
+			// the mappings stay valid after the channel is closed.
+			channel.close();
+		}
+	}
+
+	@Override
+	public byte[] writeFrame(int index, short sourcePort, short destinationPort, boolean extended, int transferId, byte[] frame) {
+		int offset = (index % this.packetsPerRegion) * this.packetSize;
+		int length = (int) Math.min(this.packetSize, this.dataSize - (long) index * this.packetSize);
+		int frameLength = (extended ? TCPPacket.EXTENDED_HEADER_SIZE : TCPPacket.HEADER_SIZE) + length;
+		if (frame == null || frame.length != frameLength) {
+			frame = new byte[frameLength];
+		}
+
+		ByteBuffer data = this.regions[index / this.packetsPerRegion].duplicate();
+		data.limit(offset + length);
+		data.position(offset);
+		TCPPacket.encodeFrame(ByteBuffer.wrap(frame), index == this.packetCount - 1, false, sourcePort, destinationPort, index,
+				extended, transferId, data);
+		return frame;
+	}
+
+	@Override
+	public int size() {
+		return packetCount;
+	}
+
+	@Override
+	public long getDataSize() {
+		return dataSize;
+	}
+
+	/**
+	 * deletes the temporary file, the mapped data stays readable for the sessions that still
+	 * send it on systems that allow deleting a mapped file, otherwise it is deleted on exit.
+	 */
+	@Override
+	public void release() {
+		this.path.toFile().delete();
+	}
+}
@@ -0,0 +1,152 @@
+package rdt;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Random;
+/**
+ * compares the ByteBuffer packet codec with the old ArrayList<Byte> based one.
+ * JMH is not available to this project, so the benchmark is a plain main class that
+ * warms up, then measures operations per second and bytes allocated per operation.
+ */
+public class PacketCodecBenchmark {
+	static int payloadSize = 1000;
+	static int iterations = 200000;
+	static long blackhole = 0;
+
+	public static void main(String[] args) {
+		if (args.length > 0) {
+			payloadSize = Integer.parseInt(args[0]);
+		}
+
+		byte[] payload = new byte[payloadSize];
+		new Random(42).nextBytes(payload);
+		TCPPacket packet = new TCPPacket((short) 6000, (short) 5000, (short) 7, payload);
+		ACKPacket ackPacket = new ACKPacket((short) 7, (short) 6000);
+		byte[] encodedPacket = packet.encode();
+		byte[] encodedACK = ackPacket.encode();
+		ByteBuffer directBuffer = ByteBuffer.allocateDirect(TCPPacket.HEADER_SIZE + payloadSize);
+
+		// run every case twice, the first round only warms up the JIT.
+		for (int round = 0; round < 2; round++) {
+			boolean print = round == 1;
+
+			measure("legacy TCPPacket encode", print, () -> blackhole += legacyEncode(packet).length);
+			measure("buffer TCPPacket encode", print, () -> {
+				directBuffer.clear();
+				packet.encode(directBuffer);
+				blackhole += directBuffer.position();
+			});
+			measure("legacy TCPPacket decode", print, () -> blackhole += legacyDecode(encodedPacket));
+			measure("buffer TCPPacket decode", print, () -> {
+				TCPPacket decoded = new TCPPacket();
+				decoded.decode(ByteBuffer.wrap(encodedPacket));
+				blackhole += decoded.getSequanceNumber();
+			});
+			measure("buffer ACKPacket encode", print, () -> {
+				directBuffer.clear();
+				ackPacket.encode(directBuffer);
+				blackhole += directBuffer.position();
+			});
+			measure("buffer ACKPacket decode", print, () -> {
+				ACKPacket decoded = new ACKPacket();
+				decoded.decode(ByteBuffer.wrap(encodedACK));
+				blackhole += decoded.getAckNumber();
+			});
+		}
+
+		System.out.println("(" + blackhole + ")");
+	}
+
+	/**
+	 * runs an operation and prints its throughput and allocation rate.
+	 * @param name the name of the case.
+	 * @param print false while warming up.
+	 * @param operation the operation to measure.
+	 */
+	private static void measure(String name, boolean print, Runnable operation) {
+		long startBytes = allocatedBytes();
+		long startTime = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			operation.run();
+		}
+		long time = System.nanoTime() - startTime;
+		long bytes = allocatedBytes() - startBytes;
+
+		if (print) {
+			System.out.printf("%-26s %12.0f ops/s %10d B/op%n", name, iterations * 1e9 / time, bytes / iterations);
+		}
+	}
+
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * the encode path the codec replaced, every byte is boxed and copied twice.
+	 */
+	private static byte[] legacyEncode(TCPPacket packet) {
+		ArrayList<Byte> byteArrayList = new ArrayList<Byte>();
+		for (short value: new short[] {packet.sourcePort, packet.destinationPort, packet.lenght}) {
+			for (byte b: ByteBuffer.allocate(2).order(ByteOrder.BIG_ENDIAN).putShort(value).array()) {
+				byteArrayList.add(b);
+			}
+		}
+		for (byte b: packet.data) {
+			byteArrayList.add(b);
+		}
+
+		byte[] byteArray = new byte[byteArrayList.size()];
+		for (int i = 0; i < byteArrayList.size(); i++) {
+			byteArray[i] = byteArrayList.get(i).byteValue();
+		}
+		short checkSum = Checksum.calculate(byteArray);
+
+		byteArrayList.clear();
+		byteArrayList.add(packet.finalPacket ? (byte) 1 : (byte) 0);
+		byteArrayList.add(packet.fileData ? (byte) 1 : (byte) 0);
+		for (short value: new short[] {packet.sourcePort, packet.destinationPort, packet.lenght, checkSum, (short) packet.sequanceNumber}) {
+			for (byte b: ByteBuffer.allocate(2).order(ByteOrder.BIG_ENDIAN).putShort(value).array()) {
+				byteArrayList.add(b);
+			}
+		}
+		for (byte b: packet.data) {
+			byteArrayList.add(b);
+		}
+
+		byteArray = new byte[byteArrayList.size()];
+		for (int i = 0; i < byteArrayList.size(); i++) {
+			byteArray[i] = byteArrayList.get(i).byteValue();
+		}
+		return byteArray;
+	}
+
+	/**
+	 * the decode path the codec replaced, returns the decoded sequance number.
+	 */
+	private static int legacyDecode(byte[] data) {
+		ArrayList<Byte> byteArrayList = new ArrayList<Byte>();
+		for (int i = 2; i < 8; i++) {
+			byteArrayList.add(data[i]);
+		}
+		short lenght = ByteBuffer.wrap(new byte[] {data[6], data[7]}).order(ByteOrder.BIG_ENDIAN).getShort();
+		short sequanceNumber = ByteBuffer.wrap(new byte[] {data[10], data[11]}).order(ByteOrder.BIG_ENDIAN).getShort();
+
+		byte[] payload = new byte[lenght - TCPPacket.HEADER_SIZE];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = data[TCPPacket.HEADER_SIZE + i];
+			byteArrayList.add(data[TCPPacket.HEADER_SIZE + i]);
+		}
+
+		byte[] byteArray = new byte[byteArrayList.size()];
+		for (int i = 0; i < byteArrayList.size(); i++) {
+			byteArray[i] = byteArrayList.get(i).byteValue();
+		}
+		return sequanceNumber + Checksum.calculate(byteArray) + payload.length;
+	}
+}
@@ -0,0 +1,117 @@
+package rdt;
+
+import java.nio.ByteBuffer;
+/**
+ * holds the packets of a file in memory as ready to send frames, the header, checksum and data
+ * of every packet are encoded only once. the frames of a file are created in the original format
+ * with both ports set to 0 and are copied and patched with the ports and format of each client
+ * by writeFrame().
+ */
+public class PacketFrames implements CompressedFile {
+	private static final int SOURCE_PORT_OFFSET = 2;
+	private static final int DESTINATION_PORT_OFFSET = 4;
+	private static final int LENGTH_OFFSET = 6;
+	private static final int CHECKSUM_OFFSET = 8;
+
+	private final byte[][] frames;
+	private final int dataSize;
+
+	private PacketFrames(byte[][] frames, int dataSize) {
+		this.frames = frames;
+		this.dataSize = dataSize;
+	}
+
+	/**
+	 * splits the data of a file into packets of the given size and encodes every packet.
+	 * the last packet is marked as the final packet.
+	 * @param fileBytes the data of the file.
+	 * @param packetSize the maximum number of data bytes in one packet.
+	 * @return the encoded frames, both ports of every frame are 0.
+	 */
+	public static PacketFrames encode(byte[] fileBytes, int packetSize) {
+		int count = Math.max(1, (fileBytes.length + packetSize - 1) / packetSize);
+		byte[][] frames = new byte[count][];
+
+		for (int i = 0; i < count; i++) {
+			int offset = i * packetSize;
+			byte[] data = new byte[Math.min(packetSize, fileBytes.length - offset)];
+			System.arraycopy(fileBytes, offset, data, 0, data.length);
+
+			TCPPacket packet = new TCPPacket((short) 0, (short) 0, (short) i, data);
+			packet.setFinalPacket(i == count - 1);
+			frames[i] = packet.encode();
+		}
+
+		return new PacketFrames(frames, fileBytes.length);
+	}
+
+	/**
+	 * copies a frame for one client, only the port fields are changed and the checksum of the
+	 * frame is updated incrementally instead of being calculated again. for the extended format
+	 * the sequance number is widened, the transfer id is inserted and both are added to the
+	 * checksum, the data is copied as it is.
+	 */
+	@Override
+	public byte[] writeFrame(int index, short sourcePort, short destinationPort, boolean extended, int transferId, byte[] frame) {
+		byte[] sharedFrame = this.frames[index];
+		int dataLength = sharedFrame.length - TCPPacket.HEADER_SIZE;
+		int headerSize = extended ? TCPPacket.EXTENDED_HEADER_SIZE : TCPPacket.HEADER_SIZE;
+		if (frame == null || frame.length != headerSize + dataLength) {
+			frame = new byte[headerSize + dataLength];
+		}
+		System.arraycopy(sharedFrame, 0, frame, 0, TCPPacket.SEQUANCE_OFFSET);
+		System.arraycopy(sharedFrame, TCPPacket.HEADER_SIZE, frame, headerSize, dataLength);
+
+		ByteBuffer buffer = ByteBuffer.wrap(frame);
+		short checkSum = buffer.getShort(CHECKSUM_OFFSET);
+		checkSum = Checksum.adjust(checkSum, buffer.getShort(SOURCE_PORT_OFFSET), sourcePort);
+		checkSum = Checksum.adjust(checkSum, buffer.getShort(DESTINATION_PORT_OFFSET), destinationPort);
+		buffer.putShort(SOURCE_PORT_OFFSET, sourcePort);
+		buffer.putShort(DESTINATION_PORT_OFFSET, destinationPort);
+
+		if (extended) {
+			short lenght = (short) (headerSize + dataLength);
+			checkSum = Checksum.adjust(checkSum, buffer.getShort(LENGTH_OFFSET), lenght);
+			checkSum = Checksum.adjust(checkSum, (short) 0, (short) (index >>> 16));
+			checkSum = Checksum.adjust(checkSum, (short) 0, (short) index);
+			checkSum = Checksum.adjust(checkSum, (short) 0, (short) (transferId >>> 16));
+			checkSum = Checksum.adjust(checkSum, (short) 0, (short) transferId);
+			buffer.put(0, (byte) (buffer.get(0) | TCPPacket.EXTENDED_FLAG));
+			buffer.putShort(LENGTH_OFFSET, lenght);
+			buffer.putInt(TCPPacket.SEQUANCE_OFFSET, index);
+			buffer.putInt(TCPPacket.SEQUANCE_OFFSET + 4, transferId);
+		}
+		else {
+			buffer.putShort(TCPPacket.SEQUANCE_OFFSET, (short) index);
+		}
+		buffer.putShort(CHECKSUM_OFFSET, checkSum);
+		return frame;
+	}
+
+	/**
+	 * returns an encoded frame, the returned array is shared and must not be modified.
+	 * @param index the index of the frame, which is also its sequance number.
+	 * @return the encoded frame.
+	 */
+	public byte[] get(int index) {
+		return this.frames[index];
+	}
+
+	public boolean isFinalPacket(int index) {
+		return index == this.frames.length - 1;
+	}
+
+	@Override
+	public int size() {
+		return this.frames.length;
+	}
+
+	@Override
+	public long getDataSize() {
+		return dataSize;
+	}
+
+	@Override
+	public void release() {
+	}
+}
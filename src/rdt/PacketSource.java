@@ -0,0 +1,71 @@
+package rdt;
+
+import java.util.Arrays;
+/**
+ * the packets of one transfer. frames are written from the shared compressed file when they are
+ * first sent and kept in a ring of slots so retransmissions of packets in the window are a plain
+ * socket write, a frame is dropped once a packet a window further is sent. the memory of a
+ * transfer therefore depends on its window and not on the size of its file.
+ */
+public class PacketSource {
+	private final CompressedFile file;
+	private final short sourcePort;
+	private final short destinationPort;
+	private final boolean extended;
+	private final int transferId;
+	private final byte[][] frames;
+	private final int[] frameNumbers;
+	private long framesWritten = 0;
+
+	/**
+	 * creates a new packet source.
+	 * @param file the compressed file to send.
+	 * @param sourcePort the port that the packets will be sent from.
+	 * @param destinationPort the port that the packets will be sent to.
+	 * @param extended true to send the packets in the extended format.
+	 * @param transferId the id of the transfer, only sent in the extended format.
+	 * @param windowSize the number of frames to keep.
+	 */
+	public PacketSource(CompressedFile file, short sourcePort, short destinationPort, boolean extended, int transferId, int windowSize) {
+		this.file = file;
+		this.sourcePort = sourcePort;
+		this.destinationPort = destinationPort;
+		this.extended = extended;
+		this.transferId = transferId;
+		this.frames = new byte[Math.max(1, windowSize)][];
+		this.frameNumbers = new int[this.frames.length];
+		Arrays.fill(this.frameNumbers, -1);
+	}
+
+	/**
+	 * returns the encoded frame of a packet, the returned array is reused for a later packet and
+	 * must be sent before the next call.
+	 * @param index the index of the packet, which is also its sequance number.
+	 * @return the encoded frame.
+	 */
+	public byte[] get(int index) {
+		int slot = index % this.frames.length;
+		if (this.frameNumbers[slot] != index) {
+			this.frames[slot] = this.file.writeFrame(index, this.sourcePort, this.destinationPort, this.extended, this.transferId, this.frames[slot]);
+			this.frameNumbers[slot] = index;
+			this.framesWritten++;
+		}
+		return this.frames[slot];
+	}
+
+	public boolean isFinalPacket(int index) {
+		return index == this.file.size() - 1;
+	}
+
+	public int size() {
+		return this.file.size();
+	}
+
+	public long getDataSize() {
+		return this.file.getDataSize();
+	}
+
+	public long getFramesWritten() {
+		return framesWritten;
+	}
+}
@@ -0,0 +1,63 @@
+package rdt;
+/**
+ * congestion control in the style of TCP Reno. the window grows by one packet for every
+ * acknowledged packet until the slow start threshold (slow start), and then by one packet
+ * for every window of acknowledged packets (additive increase). a loss halves the window
+ * (multiplicative decrease), a timeout starts again with slow start from one packet.
+ */
+public class RenoCongestionControl implements CongestionControl {
+	static final int INITIAL_WINDOW = 4;
+
+	private final int maxWindow;
+	private double window;
+	private double slowStartThreshold;
+
+	/**
+	 * creates a new Reno congestion control.
+	 * @param maxWindow the largest window, the window of the receiver.
+	 */
+	public RenoCongestionControl(int maxWindow) {
+		this.maxWindow = Math.max(1, maxWindow);
+		this.window = Math.min(INITIAL_WINDOW, this.maxWindow);
+		this.slowStartThreshold = this.maxWindow;
+	}
+
+	@Override
+	public void onAck(int ackedPackets, long now) {
+		for (int i = 0; i < ackedPackets; i++) {
+			if (this.window < this.slowStartThreshold) {
+				this.window += 1;
+			}
+			else {
+				this.window += 1 / this.window;
+			}
+		}
+		this.window = Math.min(this.window, this.maxWindow);
+	}
+
+	@Override
+	public void onLoss(long now) {
+		this.slowStartThreshold = Math.max(this.window / 2, 2);
+		this.window = Math.min(this.slowStartThreshold, this.maxWindow);
+	}
+
+	@Override
+	public void onTimeout(long now) {
+		this.slowStartThreshold = Math.max(this.window / 2, 2);
+		this.window = 1;
+	}
+
+	@Override
+	public int getWindow() {
+		return Math.max(1, (int) this.window);
+	}
+
+	public double getSlowStartThreshold() {
+		return slowStartThreshold;
+	}
+
+	@Override
+	public String getName() {
+		return "reno";
+	}
+}
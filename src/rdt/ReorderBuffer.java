@@ -0,0 +1,124 @@
+package rdt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+/**
+ * puts the packets of a transfer back in order and writes their data to a file as soon as it is
+ * in order. a packet that arrives ahead of the first missing packet waits in a ring indexed by its
+ * sequance number, once the missing packet arrives every waiting packet after it is written with
+ * one gathering write and its buffer is given back to the pool. the memory of a transfer is
+ * therefore bounded by the receive window and not by the size of the file.
+ * the sequance numbers must be unique and less than the capacity ahead of the next packet to
+ * write, which the receive window of the client makes sure of.
+ */
+public class ReorderBuffer {
+	private final FileChannel channel;
+	private final BufferPool pool;        // the buffers of the written packets are given back to it, may be null.
+	private final TCPPacket[] slots;      // the packet with number i waits at index i % capacity.
+	private final ByteBuffer[] writeBatch;
+	private int nextNumber = 0;           // the number of the next packet to write.
+	private int waiting = 0;
+	private int maxWaiting = 0;
+	private long bytesWritten = 0;
+	private long writes = 0;
+
+	/**
+	 * creates a new reorder buffer, the file is created or truncated.
+	 * @param path the file to write the data to.
+	 * @param capacity the largest distance of a packet from the next packet to write.
+	 * @param pool the pool that the buffers of the packets are given back to, or null.
+	 * @throws IOException if the file can not be opened.
+	 */
+	public ReorderBuffer(Path path, int capacity, BufferPool pool) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.pool = pool;
+		this.slots = new TCPPacket[capacity];
+		this.writeBatch = new ByteBuffer[capacity];
+	}
+
+	/**
+	 * adds a packet, its data and the data of the packets waiting after it are written if it is the
+	 * next packet to write.
+	 * @param number the sequance number of the packet.
+	 * @param packet the packet.
+	 * @throws IOException if the file can not be written.
+	 */
+	public void add(int number, TCPPacket packet) throws IOException {
+		this.slots[number % this.slots.length] = packet;
+		this.waiting++;
+		this.maxWaiting = Math.max(this.maxWaiting, this.waiting);
+
+		if (number == this.nextNumber) {
+			this.flush();
+		}
+	}
+
+	/**
+	 * writes the data of the packets from the next packet to write up to the first missing one.
+	 */
+	private void flush() throws IOException {
+		int count = 0;
+		while (count < this.slots.length) {
+			TCPPacket packet = this.slots[(this.nextNumber + count) % this.slots.length];
+			if (packet == null) {
+				break;
+			}
+			this.writeBatch[count] = packet.getPayload();
+			count++;
+		}
+
+		long remaining = 0;
+		for (int i = 0; i < count; i++) {
+			remaining += this.writeBatch[i].remaining();
+		}
+		while (remaining > 0) {
+			remaining -= this.channel.write(this.writeBatch, 0, count);
+			this.writes++;
+		}
+
+		for (int i = 0; i < count; i++) {
+			int slot = (this.nextNumber + i) % this.slots.length;
+			this.bytesWritten += this.slots[slot].getPayload().remaining();
+			if (this.pool != null && this.slots[slot].getFrame() != null) {
+				this.pool.release(this.slots[slot].getFrame());
+			}
+			this.slots[slot] = null;
+			this.writeBatch[i] = null;
+		}
+		this.nextNumber += count;
+		this.waiting -= count;
+	}
+
+	/**
+	 * closes the file, packets that are still waiting are not written.
+	 * @throws IOException if the file can not be closed.
+	 */
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	public int getNextNumber() {
+		return nextNumber;
+	}
+
+	public int getMaxWaiting() {
+		return maxWaiting;
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	public long getWrites() {
+		return writes;
+	}
+
+	@Override
+	public String toString() {
+		return "reorder buffer: " + this.getBytesWritten() + " bytes of " + this.getNextNumber() + " packets in "
+				+ this.getWrites() + " writes, at most " + this.getMaxWaiting() + " packets waiting";
+	}
+}
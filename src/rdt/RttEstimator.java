@@ -0,0 +1,117 @@
+package rdt;
+/**
+ * estimates the round trip time of a transfer and the timeout until a packet is sent again,
+ * following Jacobson's algorithm (RFC 6298). the smoothed round trip time and its variation are
+ * updated from every sample, the timeout is the smoothed time plus four times the variation.
+ * samples must only be taken from packets that were sent once (Karn's rule), every timeout doubles
+ * the timeout until a new sample is taken.
+ */
+public class RttEstimator {
+	private static final int CLOCK_GRANULARITY = 1000;   // the tick of the timer wheel in microseconds.
+
+	private final int initialTimeOut;
+	private final int minTimeOut;
+	private final int maxTimeOut;
+	private long smoothedRtt = -1;   // in microseconds, -1 until the first sample.
+	private long rttVariation = 0;   // in microseconds.
+	private long minRtt = Long.MAX_VALUE;
+	private long maxRtt = 0;
+	private long lastRtt = 0;
+	private long sampleCount = 0;
+	private long backoffCount = 0;
+	private int timeOut;             // in milliseconds.
+
+	/**
+	 * creates a new estimator.
+	 * @param initialTimeOut the timeout in milliseconds used until the first sample.
+	 * @param minTimeOut the smallest timeout in milliseconds.
+	 * @param maxTimeOut the largest timeout in milliseconds.
+	 */
+	public RttEstimator(int initialTimeOut, int minTimeOut, int maxTimeOut) {
+		this.initialTimeOut = initialTimeOut;
+		this.minTimeOut = minTimeOut;
+		this.maxTimeOut = maxTimeOut;
+		this.timeOut = this.clamp(initialTimeOut);
+	}
+
+	/**
+	 * adds a round trip time sample and recalculates the timeout, this ends any backoff.
+	 * @param rtt the time in microseconds between sending a packet and receiving its ACK.
+	 */
+	public void addSample(long rtt) {
+		if (this.smoothedRtt < 0) {
+			this.smoothedRtt = rtt;
+			this.rttVariation = rtt / 2;
+		}
+		else {
+			this.rttVariation = (3 * this.rttVariation + Math.abs(this.smoothedRtt - rtt)) / 4;
+			this.smoothedRtt = (7 * this.smoothedRtt + rtt) / 8;
+		}
+
+		this.lastRtt = rtt;
+		this.minRtt = Math.min(this.minRtt, rtt);
+		this.maxRtt = Math.max(this.maxRtt, rtt);
+		this.sampleCount++;
+
+		long timeOutMicros = this.smoothedRtt + Math.max(CLOCK_GRANULARITY, 4 * this.rttVariation);
+		this.timeOut = this.clamp((timeOutMicros + 999) / 1000);
+	}
+
+	/**
+	 * doubles the timeout after a packet had to be sent again.
+	 */
+	public void backoff() {
+		this.timeOut = this.clamp(2L * this.timeOut);
+		this.backoffCount++;
+	}
+
+	private int clamp(long timeOut) {
+		return (int) Math.max(this.minTimeOut, Math.min(this.maxTimeOut, timeOut));
+	}
+
+	/**
+	 * returns the current timeout in milliseconds.
+	 */
+	public int getTimeOut() {
+		return timeOut;
+	}
+
+	public int getInitialTimeOut() {
+		return initialTimeOut;
+	}
+
+	public long getSmoothedRtt() {
+		return smoothedRtt;
+	}
+
+	public long getRttVariation() {
+		return rttVariation;
+	}
+
+	public long getMinRtt() {
+		return sampleCount == 0 ? 0 : minRtt;
+	}
+
+	public long getMaxRtt() {
+		return maxRtt;
+	}
+
+	public long getLastRtt() {
+		return lastRtt;
+	}
+
+	public long getSampleCount() {
+		return sampleCount;
+	}
+
+	public long getBackoffCount() {
+		return backoffCount;
+	}
+
+	@Override
+	public String toString() {
+		return "rtt: " + this.getSampleCount() + " samples, srtt " + Math.max(0, this.getSmoothedRtt()) + " us, rttvar "
+				+ this.getRttVariation() + " us, min " + this.getMinRtt() + " us, max " + this.getMaxRtt() + " us, timeout "
+				+ this.getTimeOut() + " ms, " + this.getBackoffCount() + " backoffs";
+	}
+}
@@ -0,0 +1,131 @@
+package rdt;
+
+import java.io.IOException;
+import java.net.InetAddress;
+/**
+ * a session that sends data accourding to the selective repeat protocol. with a sliding
+ * window a new packet is sent as soon as the first packet of the window is acknowledged,
+ * otherwise the next window is only sent once every packet of the last one is acknowledged.
+ */
+class SelectiveRepeatSession extends Session {
+	int windowSize;
+	int currentWindowSize = 0;
+	int currentBase = 0;
+	boolean lastPacketSent = false;
+	int recoveryPoint = 0;         // losses of packets before here belong to a loss the congestion control already knows.
+	int highestAcknowledged = -1;  // the highest packet that the client acknowledged, possibly in a block past a gap.
+	TimerWheel.Timeout[] timers;   // the timer of packet i is at index i % windowSize.
+	AckWindow recivedACKNumbers;
+
+	/**
+	 * creates a new selective repeat session.
+	 * @param shard the shard of the server that owns this session.
+	 * @param receivedPacket the request packet sent by the client.
+	 * @param clientIP the IP of the client.
+	 * @param windowSize the largest number of packets activly being sent.
+	 */
+	SelectiveRepeatSession(ServerShard shard, TCPPacket receivedPacket, InetAddress clientIP, int windowSize) {
+		super(shard, receivedPacket, clientIP, windowSize);
+		this.windowSize = windowSize;
+		this.congestion = shard.server.createCongestionControl(windowSize);
+		this.recivedACKNumbers = new AckWindow(windowSize);
+		this.timers = new TimerWheel.Timeout[windowSize];
+		for (int i = 0; i < windowSize; i++) {
+			this.timers[i] = new TimerWheel.Timeout(this, i);
+		}
+	}
+
+	@Override
+	void sendFirstPackets() throws IOException {
+		this.sendWindow();
+	}
+
+	/**
+	 * sends the packets that the window allows and that were not sent yet, the window holds
+	 * as many packets after the first packet that is not acknowledged as the congestion window
+	 * allows. if the window reaches the end of the file marks the last packet as sent.
+	 */
+	private void sendWindow() throws IOException {
+		int windowLimit = Math.min(this.recivedACKNumbers.getBase() + this.congestion.getWindow(), this.filePackets.size());
+
+		for (int i = this.currentBase; i < windowLimit; i++) {
+			this.send(i, windowLimit == this.filePackets.size() ? "sent final" : "sent");
+
+			TimerWheel.Timeout timer = this.timers[i % this.windowSize];
+			timer.setNumber(i);
+			this.shard.timers.schedule(timer, this.rtt.getTimeOut());
+			this.currentWindowSize++;
+		}
+
+		this.currentBase = Math.max(this.currentBase, windowLimit);
+		if (windowLimit == this.filePackets.size()) {
+			this.lastPacketSent = true;
+		}
+	}
+
+	/**
+	 * cancels the timer of the acknowledged packet and slides the window, without a sliding
+	 * window only once every packet in the window is acknowledged.
+	 */
+	@Override
+	void acknowledge(int number) throws IOException {
+		if (!this.recivedACKNumbers.mark(number)) {
+			return;
+		}
+		this.measure(number);
+		this.highestAcknowledged = Math.max(this.highestAcknowledged, number);
+
+		TimerWheel.Timeout timer = this.timers[number % this.windowSize];
+		if (timer.isPending() && timer.getNumber() == number) {
+			this.shard.timers.cancel(timer);
+			this.currentWindowSize--;
+		}
+
+		if (this.currentWindowSize == 0 || this.server.slidingWindow) {
+			this.recivedACKNumbers.advance();
+			if (this.lastPacketSent && this.currentWindowSize == 0) {
+				this.finish();
+			}
+			else {
+				this.sendWindow();
+			}
+		}
+	}
+
+	@Override
+	int getFirstUnacknowledged() {
+		return this.recivedACKNumbers.getBase();
+	}
+
+	/**
+	 * resends a packet whose timer has finished, the timeout is doubled when the timer of the
+	 * first packet that is not acknowledged finishes so a burst of losses backs off only once.
+	 * the first loss among the packets sent since the last loss shrinks the congestion window.
+	 * a packet below an acknowledged packet was lost in a gap of the selective ACKs while later
+	 * packets got through, which is a loss. otherwise nothing after the packet arrived and the
+	 * timeout is a retransmission timeout, which takes the window back to slow start.
+	 */
+	@Override
+	public void timeout(int number) throws IOException {
+		if (this.abandonIfIdle()) {
+			return;
+		}
+
+		if (number == this.getFirstUnacknowledged()) {
+			this.rtt.backoff();
+		}
+		if (number >= this.recoveryPoint) {
+			this.recoveryPoint = this.currentBase;
+			this.reportLoss(number > this.highestAcknowledged);
+		}
+		this.send(number, "resent");
+		this.shard.timers.schedule(this.timers[number % this.windowSize], this.rtt.getTimeOut());
+	}
+
+	@Override
+	void cancelTimers() {
+		for (TimerWheel.Timeout timer: this.timers) {
+			this.shard.timers.cancel(timer);
+		}
+	}
+}
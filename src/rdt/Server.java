@@ -2,28 +2,48 @@ package rdt;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.net.InetAddress;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
-import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ExecutorService;
 
 /**
  * this class represents a server, this class receives requests from the clients and send 
- * the requested files.
+ * the requested files. the transfers are spread over shards, one for every core, each shard has
+ * a non-blocking channel that is served by its own event loop. each transfer is a Session that
+ * the loop of its shard feeds with ACKs and with the timeouts of its timers on the shard's timer
+ * wheel. the packets that the sessions send in one round of a loop are batched and written
+ * together at its end.
  */
 public class Server extends Thread{
 	InetAddress serverIP;
 	short serverPort;
-	DatagramSocket sendingSocket;
-	DatagramSocket receivingSocket;
+	int shardCount = Runtime.getRuntime().availableProcessors();   // the number of event loops.
+	ServerShard[] shards;
+	boolean reusePort = false;   // true if the channels of the shards share the server port.
 	int protocol = 1;        // Protocol ID, 1 = stop and wait, 2 = selective repeat, 3 = go back N.
-	int windowSize;           
-	int timeOut = 500;        // Timeout until the server stops listening.
+	int windowSize;           // the largest congestion window, the number of packets the client accepts ahead.
+	String congestionControl = "reno";   // the congestion control of the windowed protocols, reno or cubic.
+	boolean slidingWindow = true;        // false sends a new window only once the last one is acknowledged.
+	String traceDirectory = null;        // the directory the congestion window of every transfer is written to, or null.
+	int traceCapacity = 4096;            // the largest number of window changes kept for a transfer.
+	int maxPacketSize = TCPPacket.MAX_DATA_SIZE;   // the largest number of data bytes a client may ask for in a packet.
+	int timeOut = 500;        // Timeout until a packet is sent again, before the round trip time of a transfer is measured.
+	int minTimeOut = 10;      // the bounds of the timeout calculated from the round trip time.
+	int maxTimeOut = 60000;
+	int idleTimeOut = 5000;   // Timeout until the server stops listening when no transfer is active.
+	int sessionTimeOut = 30000;   // Timeout until a transfer without ACKs from its client is abandoned.
+	int pollInterval = 10;    // the longest time the event loop waits before advancing the timers.
+	boolean verbose = true;
+	volatile boolean running = true;
 	FileHandler fileHandler = FileHandler.getFileHandler();
+	boolean virtualThreads = false;   // true to load files on virtual threads when the runtime has them.
+	ExecutorService fileLoader = WorkerThreads.executor("file loader", false);
 	
 	/**
 	 * cretes a new server, reads the server data from file.
@@ -31,9 +51,7 @@ public class Server extends Thread{
 	public Server() {
 		try {
 			this.loadServerFromFile();
-			sendingSocket = new DatagramSocket();
-			receivingSocket = new DatagramSocket(this.serverPort);
-			receivingSocket.setSoTimeout(5000);
+			this.openShards();
 		} catch(Exception e) {
 			e.printStackTrace();
 		}
@@ -50,144 +68,227 @@ public class Server extends Thread{
 			this.serverIP = InetAddress.getByName(serverIP);
 			this.serverPort = serverPort;
 			this.windowSize = windowSize;
-		
-			sendingSocket = new DatagramSocket();
-			receivingSocket = new DatagramSocket(this.serverPort);
-			receivingSocket.setSoTimeout(5000);
-		} catch (SocketException e) {
-			e.printStackTrace();
-		} catch (UnknownHostException e) {
+			this.openShards();
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
+	
+	/**
+	 * opens a channel for every shard. the channels share the server port if the runtime supports
+	 * SO_REUSEPORT, otherwise only the channel of the first shard is bound to the port.
+	 * @throws IOException if the port can not be bound.
+	 */
+	private void openShards() throws IOException {
+		InetSocketAddress address = new InetSocketAddress(this.serverPort & 0xFFFF);
+		SocketOption<Boolean> reusePortOption = findReusePortOption();
+		this.shards = new ServerShard[this.shardCount];
+		this.reusePort = false;
+		
+		for (int i = 0; i < this.shardCount; i++) {
+			DatagramChannel channel = DatagramChannel.open();
+			if (i == 0) {
+				this.reusePort = this.shardCount > 1 && reusePortOption != null && channel.supportedOptions().contains(reusePortOption);
+			}
+			if (this.reusePort) {
+				channel.setOption(reusePortOption, true);
+			}
+			if (this.reusePort || i == 0) {
+				channel.bind(address);
+			}
+			this.shards[i] = new ServerShard(this, i, channel, this.reusePort || i == 0, !this.reusePort && i == 0 && this.shardCount > 1);
+		}
+	}
+	
+	/**
+	 * returns the SO_REUSEPORT option, which java has since version 9, or null if the runtime has none.
+	 */
+	@SuppressWarnings("unchecked")
+	private static SocketOption<Boolean> findReusePortOption() {
+		try {
+			return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
 
 	/**
-	 * starts the server, the servers starts to listen to requests from clients, 
-	 * it listens for requests, if a request arrives the server starts a new thread to 
-	 * send data to the user and receive the user's Acks. 
-	 * the server stops listening after a timeout. 
+	 * starts the server, the servers starts to listen to requests from clients. 
+	 * every shard runs its own event loop on its own thread, the server waits until all of them
+	 * stopped, which happens after a timeout without requests or active transfers. 
 	 */
 	@Override
 	public void run() {
 		try {
-			// these arraylists hold the threads currently sending data to clients, only one arraylist is created based on the selected protocol.
-			ArrayList<stopAndWaitHandler> handlers = null;
-			ArrayList<SelectiveRepeatHandler> selectiveHandlers = null;
-			ArrayList<GoBackNHandler> goBackHandlers = null;
-			
-			if (protocol == 1) {
-				handlers = new ArrayList<stopAndWaitHandler>();
-			} 
-			else if (protocol == 2) {
-				selectiveHandlers = new ArrayList<SelectiveRepeatHandler>();
+			for (ServerShard shard: this.shards) {
+				shard.start();
 			}
-			else {
-				goBackHandlers = new ArrayList<GoBackNHandler>();
+			for (ServerShard shard: this.shards) {
+				shard.join();
 			}
-			
-			while(true) {
-				byte[] packetBuffer = new byte[100];
-				DatagramPacket recivedDatagram = new DatagramPacket(packetBuffer, packetBuffer.length);
-				ACKPacket receivedACKPacket = null;
-				TCPPacket receivedPacket = null;
-				
-				// listen for new requests from clients
-				receivingSocket.receive(recivedDatagram);
-				byte[] encodedData = recivedDatagram.getData();
-				
-				// get the length of the received packet.
-				int packetLength = this.getPacketLength(encodedData);
-				
-				// if smaller than 12 it is an ACK packet.
-				if (packetLength < 12) {
-					receivedACKPacket = new ACKPacket();
-					receivedACKPacket.decode(encodedData);
-					System.out.println("server received ACK packet " + receivedACKPacket.getAckNumber());
-					
-					if (!receivedACKPacket.isCorrupted()) {
-						InetAddress clientIP = recivedDatagram.getAddress();
-						short clientPort = receivedACKPacket.getSourcePort();
-						int sequanceNumber = receivedACKPacket.getAckNumber();
-						
-						// pass the ACK packet to the appropriate handler.
-						if (protocol == 1) {
-							for (stopAndWaitHandler tempHandler: handlers){
-								if (tempHandler.getClientIP().equals(clientIP) && tempHandler.getClientPort() == clientPort) {
-									tempHandler.setLastACKReceived(sequanceNumber);
-								}
-							}
-						} 
-						else if (protocol == 2) {
-							for (SelectiveRepeatHandler tempHandler: selectiveHandlers){
-								if (tempHandler.getClientIP().equals(clientIP) && tempHandler.getClientPort() == clientPort) {
-									tempHandler.addAck((short) sequanceNumber);
-								}
-							}
-						}
-						else {
-							for (GoBackNHandler tempHandler: goBackHandlers){
-								if (tempHandler.getClientIP().equals(clientIP) && tempHandler.getClientPort() == clientPort) {
-									tempHandler.addAck((short) sequanceNumber);
-								}
-							}
-						}
-						
-					}
-				}
-				// else it is a data packet.
-				else{
-					receivedPacket = new TCPPacket();
-					receivedPacket.decode(encodedData);
-					System.out.println("server received request packet");
-					
-					// depending on the selected protocol create an appropriate handler.
-					if (!receivedPacket.isCorrupted()) {
-						if (protocol == 1) {
-							stopAndWaitHandler handler = new stopAndWaitHandler(receivedPacket, recivedDatagram.getAddress());
-							handler.start();
-							handlers.add(handler);
-						}
-						else if (protocol == 2) {
-							SelectiveRepeatHandler handler = new SelectiveRepeatHandler(receivedPacket, recivedDatagram.getAddress(), this.windowSize);
-							handler.start();
-							selectiveHandlers.add(handler);
-						}
-						else {
-							GoBackNHandler handler = new GoBackNHandler(receivedPacket, recivedDatagram.getAddress(), this.windowSize);
-							handler.start();
-							goBackHandlers.add(handler);
-						}
-					}
-				}
-			}
-		} catch(SocketTimeoutException e) {
-			return;
-		} catch(Exception e2) {
-			e2.printStackTrace();
+		} catch(InterruptedException e) {
+			e.printStackTrace();
+		} finally {
+			this.fileLoader.shutdown();
 		}
 	}
-
+	
+	/**
+	 * returns the shard that owns the sessions of a client when the shards do not share the port.
+	 * @param sender the address the client sends from.
+	 * @return the shard of the client.
+	 */
+	ServerShard getShard(InetSocketAddress sender) {
+		return this.shards[Math.floorMod(sender.hashCode(), this.shards.length)];
+	}
+	
 	/**
-	 * returns the length of a packet.
-	 * @param encodedData data of the packet
-	 * @return the length of the packet.
+	 * returns true if no shard has an active session or received a datagram within the idle timeout.
+	 * @param now the current time in milliseconds.
 	 */
-	public int getPacketLength(byte[] encodedData) {
-		int firstNonZeroIndex = 0;
-		for (int i = encodedData.length - 1; i > 0; i--) {
-			if (encodedData[i] != 0) {
-				firstNonZeroIndex = i;
-				break;
+	boolean isIdle(long now) {
+		for (ServerShard shard: this.shards) {
+			if (shard.sessions.getActiveSessions() > 0 || now - shard.lastActivity <= this.idleTimeOut) {
+				return false;
 			}
 		}
-		
-		return firstNonZeroIndex + 1;
+		return true;
+	}
+	
+	/**
+	 * creates a session for the selected protocol.
+	 * @param shard the shard that owns the session.
+	 * @param receivedPacket the request packet sent by the client.
+	 * @param clientIP the IP of the client.
+	 * @return the new session.
+	 */
+	Session createSession(ServerShard shard, TCPPacket receivedPacket, InetAddress clientIP) {
+		if (protocol == 1) {
+			return new StopAndWaitSession(shard, receivedPacket, clientIP);
+		}
+		else if (protocol == 2) {
+			return new SelectiveRepeatSession(shard, receivedPacket, clientIP, this.windowSize);
+		}
+		else {
+			return new GoBackNSession(shard, receivedPacket, clientIP, this.windowSize);
+		}
+	}
+	
+	/**
+	 * creates the congestion control of a new session.
+	 * @param maxWindow the largest window of the session.
+	 * @return the congestion control selected for the server.
+	 */
+	CongestionControl createCongestionControl(int maxWindow) {
+		if ("cubic".equalsIgnoreCase(this.congestionControl)) {
+			return new CubicCongestionControl(maxWindow);
+		}
+		return new RenoCongestionControl(maxWindow);
+	}
+	
+	/**
+	 * stops the event loops of all shards, the sessions that are still active are abandoned.
+	 */
+	public void shutdown() {
+		this.running = false;
+		for (ServerShard shard: this.shards) {
+			shard.selector.wakeup();
+		}
+	}
+	
+	/**
+	 * prints a message about a packet when the server is verbose.
+	 * @param message the message.
+	 */
+	void log(String message) {
+		if (this.verbose) {
+			System.out.println(message);
+		}
 	}
 	
 	public void setProtocol(int protocol) {
 		this.protocol = protocol;
 	}
 	
+	public void setCongestionControl(String congestionControl) {
+		this.congestionControl = congestionControl;
+	}
+	
+	public void setSlidingWindow(boolean slidingWindow) {
+		this.slidingWindow = slidingWindow;
+	}
+	
+	public void setTraceDirectory(String traceDirectory) {
+		this.traceDirectory = traceDirectory;
+	}
+	
+	/**
+	 * sets the largest number of data bytes in a packet, larger requests are sent packets of this size.
+	 * @param maxPacketSize the size in bytes, at most TCPPacket.MAX_DATA_SIZE.
+	 */
+	public void setMaxPacketSize(int maxPacketSize) {
+		this.maxPacketSize = Math.min(maxPacketSize, TCPPacket.MAX_DATA_SIZE);
+	}
+	
+	/**
+	 * selects virtual or platform threads for loading the requested files, must be called before
+	 * the server is started.
+	 * @param virtualThreads true for virtual threads, platform threads are kept if the runtime has none.
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+		this.fileLoader.shutdown();
+		this.fileLoader = WorkerThreads.executor("file loader", virtualThreads);
+	}
+	
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+	
+	/**
+	 * sets the number of shards, must be called before the server is started.
+	 * @param shardCount the number of event loops, at least 1.
+	 * @throws IOException if the port can not be bound.
+	 */
+	public void setShards(int shardCount) throws IOException {
+		for (ServerShard shard: this.shards) {
+			shard.close();
+		}
+		this.shardCount = Math.max(1, shardCount);
+		this.openShards();
+	}
+	
+	public ServerShard[] getShards() {
+		return shards;
+	}
+	
+	public boolean isReusePort() {
+		return reusePort;
+	}
+	
+	/**
+	 * returns the number of active sessions on all shards.
+	 */
+	public int getActiveSessions() {
+		int activeSessions = 0;
+		for (ServerShard shard: this.shards) {
+			activeSessions += shard.sessions.getActiveSessions();
+		}
+		return activeSessions;
+	}
+	
+	/**
+	 * returns the CPU time in nanoseconds that the event loops of all shards used.
+	 */
+	public long getCpuTime() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long cpuTime = 0;
+		for (ServerShard shard: this.shards) {
+			cpuTime += Math.max(0, threads.getThreadCpuTime(shard.getId()));
+		}
+		return cpuTime;
+	}
+	
 	/**
 	 * load the server data from file.
 	 */
@@ -210,348 +311,27 @@ public class Server extends Thread{
 			tempString = read.readLine();
 			this.protocol = Integer.parseInt(tempString);
 			
-			read.close();
-		} catch(Exception e) {
-			e.printStackTrace();
-		}
-	}
-	/**
-	 * a server thread that sends data accourding to the stop and wait protocol.
-	 */
-	private class stopAndWaitHandler extends Thread{
-		int currentIndex = 0;
-		int lastACKReceived = -1;
-		InetAddress clientIP;
-		short clientPort;
-		ArrayList<TCPPacket> filePackets;
-		DatagramSocket sendingSocket;
-		
-		/**
-		 * creates a new stop and wait protocol thread.
-		 * @param receivedPacket the request packet sent by the client.
-		 * @param clientIP the IP of the client.
-		 */
-		public stopAndWaitHandler(TCPPacket receivedPacket, InetAddress clientIP) {
-			try {
-				this.clientIP = clientIP;
-				this.clientPort = receivedPacket.getSourcePort();
-				this.filePackets = fileHandler.getFilePackets(receivedPacket.getFileName(), this.clientPort, serverPort);
-				this.sendingSocket = new DatagramSocket();
-			} catch(Exception e) {
-				e.printStackTrace();
-			}
-		}
-
-		/**
-		 * starts sending the packets of the requested file to the client.
-		 */
-		@Override
-		public void run() {
-			try {
-				boolean lastPacketSent = false;
-
-				// when current packet is the last packet set flag.
-				while(!lastPacketSent) {
-					if (filePackets.get(currentIndex).isFinalPacket()) {
-						lastPacketSent = true;
-					}
-					
-					// encode the current packet.
-					byte[] encodedData = filePackets.get(currentIndex).encode();
-					DatagramPacket filePacket = new DatagramPacket(encodedData, encodedData.length, clientIP, this.clientPort);
-					
-					// keep sending the current packet until an ACK packet is received.
-					while(this.currentIndex != this.lastACKReceived) {
-						this.sendingSocket.send(filePacket);
-						System.out.println("server sent packet " + filePackets.get(currentIndex).getSequanceNumber());
-						Thread.sleep(timeOut);
-					}
-					
-					this.currentIndex++;
-				}
-			} catch(Exception e) {
-				e.printStackTrace();
-			}
-		}
-
-		public InetAddress getClientIP() {
-			return clientIP;
-		}
-
-		public short getClientPort() {
-			return clientPort;
-		}
-
-		public void setLastACKReceived(int lastACKReceived) {
-			this.lastACKReceived = lastACKReceived;
-		}
-	}
-	
-	/**
-	 * a server thread that sends data accourding to the selective repeat protocol.
-	 */
-	private class SelectiveRepeatHandler extends Thread{
-		int windowSize;
-		short clientPort;
-		boolean lastPacketSent = false;
-		InetAddress clientIP;
-		ArrayList<Timer> timers = new ArrayList<Timer>();
-		ArrayList<TCPPacket> filePackets;
-		CopyOnWriteArrayList<Short> recivedACKNumbers = new CopyOnWriteArrayList<Short>();
-		DatagramSocket sendingSocket;
-		
-		/**
-		 * creates a new selective repeat protocol thread.
-		 * @param receivedPacket the request packet sent by the client.
-		 * @param clientIP the IP of the client.
-		 * @param windowsSize the number of packets activly being sent.
-		 */
-		public SelectiveRepeatHandler(TCPPacket receivedPacket, InetAddress clientIP, int windowsSize) {
-			try {
-				this.windowSize = windowsSize;
-				this.clientIP = clientIP;
-				this.clientPort = receivedPacket.getSourcePort();
-				this.filePackets = fileHandler.getFilePackets(receivedPacket.getFileName(), this.clientPort, serverPort);
-				this.sendingSocket = new DatagramSocket();
-			} catch(Exception e) {
-				e.printStackTrace();
+			// the congestion control is optional.
+			tempString = read.readLine();
+			if (tempString != null && !tempString.trim().isEmpty()) {
+				this.congestionControl = tempString.trim();
 			}
-		}
-
-		/**
-		 * starts sending the packets of the requested file to the client.
-		 */
-		@Override
-		public void run() {
-			int currentWindowSize = 0;
-			int currentBase = 0;
 			
-			try {
-				while(!this.lastPacketSent) {
-					// if current window is last window send packets and set flag.
-					if (currentWindowSize == 0 && (currentBase + this.windowSize) >= this.filePackets.size()) {
-						for (int i = currentBase; i < this.filePackets.size(); i++) {
-							byte[] encodedData = filePackets.get(i).encode();
-							DatagramPacket filePacket = new DatagramPacket(encodedData, encodedData.length, clientIP, this.clientPort);
-							this.sendingSocket.send(filePacket);
-							System.out.println("server sent final packet " + filePackets.get(i).getSequanceNumber());
-							
-							Timer timer = new Timer(timeOut, filePackets.get(i).getSequanceNumber());
-							timer.start();
-							timers.add(timer);
-							
-							currentWindowSize++;
-						}
-						
-						this.lastPacketSent = true;
-					}
-					// if current window is not last window send packets only.
-					else if (currentWindowSize == 0 && (currentBase + this.windowSize) < this.filePackets.size()) {
-						for (int i = currentBase; i < currentBase + this.windowSize; i++) {
-							byte[] encodedData = filePackets.get(i).encode();
-							DatagramPacket filePacket = new DatagramPacket(encodedData, encodedData.length, clientIP, this.clientPort);
-							this.sendingSocket.send(filePacket);
-							System.out.println("server sent packet " + filePackets.get(i).getSequanceNumber());
-							
-							Timer timer = new Timer(timeOut, filePackets.get(i).getSequanceNumber());
-							timer.start();
-							timers.add(timer);
-							
-							currentWindowSize++;
-						}
-						
-						currentBase = currentBase + this.windowSize;
-					}
-					
-					// keep sending packets until all ACK packets are received.
-					while(currentWindowSize != 0) {
-						for (int i = 0; i < this.timers.size(); i++) {
-							// if ACK packet received remove its timer.
-							if (this.recivedACKNumbers.contains(timers.get(i).getTimerNumber())) {
-								timers.remove(i);
-								currentWindowSize--;
-							}
-							// if timer finished resend packet.
-							else if (timers.get(i).isTimerFinished()) {
-								short packetNumber = timers.get(i).getTimerNumber();
-								byte[] encodedData = filePackets.get(packetNumber).encode();
-								DatagramPacket filePacket = new DatagramPacket(encodedData, encodedData.length, clientIP, this.clientPort);
-								this.sendingSocket.send(filePacket);
-								System.out.println("server resent packet " + filePackets.get(packetNumber).getSequanceNumber());
-								
-								Timer timer = new Timer(timeOut, packetNumber);
-								timer.start();
-								timers.set(i, timer);
-							}
-						}
-					}
-				}
-			} catch(Exception e) {
-				e.printStackTrace();
-			}
-		} 
-		
-		public short getClientPort() {
-			return clientPort;
-		}
-
-		public InetAddress getClientIP() {
-			return clientIP;
-		}
-
-		public void addAck(short ACKNumber) {
-			if (!this.recivedACKNumbers.contains(ACKNumber)) {
-				this.recivedACKNumbers.add(ACKNumber);
-			}
-		}
-	}
-
-	/**
-	 * a server thread that sends data accourding to the go back n protocol.
-	 */
-	private class GoBackNHandler extends Thread{
-		int windowSize;
-		short clientPort;
-		boolean lastPacketSent = false;
-		InetAddress clientIP;
-		ArrayList<Short> currentWindow = new ArrayList<Short>();
-		Timer timer;
-		ArrayList<TCPPacket> filePackets;
-		CopyOnWriteArrayList<Short> recivedACKNumbers = new CopyOnWriteArrayList<Short>();
-		DatagramSocket sendingSocket;
-		
-		/**
-		 * creates a new selective repeat protocol thread.
-		 * @param receivedPacket the request packet sent by the client.
-		 * @param clientIP the IP of the client.
-		 * @param windowsSize the number of packets activly being sent.
-		 */
-		public GoBackNHandler(TCPPacket receivedPacket, InetAddress clientIP, int windowsSize) {
-			try {
-				this.windowSize = windowsSize;
-				this.clientIP = clientIP;
-				this.clientPort = receivedPacket.getSourcePort();
-				this.filePackets = fileHandler.getFilePackets(receivedPacket.getFileName(), this.clientPort, serverPort);
-				this.sendingSocket = new DatagramSocket();
-			} catch(Exception e) {
-				e.printStackTrace();
+			// the largest packet size is optional.
+			tempString = read.readLine();
+			if (tempString != null && !tempString.trim().isEmpty()) {
+				this.setMaxPacketSize(Integer.parseInt(tempString.trim()));
 			}
-		}
-
-		/**
-		 * starts sending the packets of the requested file to the client.
-		 */
-		@Override
-		public void run() {
-			int currentWindowSize = 0;
-			int currentBase = 0;
 			
-			try {
-				while(!this.lastPacketSent) {
-					// if current window is last window send packets and set flag.
-					if (currentWindowSize == 0 && (currentBase + this.windowSize) >= this.filePackets.size()) {
-						currentWindow.clear();
-						for (int i = currentBase; i < this.filePackets.size(); i++) {
-							byte[] encodedData = filePackets.get(i).encode();
-							DatagramPacket filePacket = new DatagramPacket(encodedData, encodedData.length, clientIP, this.clientPort);
-							this.sendingSocket.send(filePacket);
-							System.out.println("server sent final packet " + filePackets.get(i).getSequanceNumber());
-							
-							currentWindow.add(filePackets.get(i).getSequanceNumber());
-							currentWindowSize++;
-						}
-						
-						this.timer = new Timer(timeOut, (short) 0);
-						timer.start();
-						this.lastPacketSent = true;
-					}
-					// if current window is not last window send packets only.
-					else if (currentWindowSize == 0 && (currentBase + this.windowSize) < this.filePackets.size()) {
-						currentWindow.clear();
-						for (int i = currentBase; i < currentBase + this.windowSize; i++) {
-							byte[] encodedData = filePackets.get(i).encode();
-							DatagramPacket filePacket = new DatagramPacket(encodedData, encodedData.length, clientIP, this.clientPort);
-							this.sendingSocket.send(filePacket);
-							System.out.println("server sent packet " + filePackets.get(i).getSequanceNumber());
-							
-							currentWindow.add(filePackets.get(i).getSequanceNumber());
-							currentWindowSize++;
-						}
-						
-						this.timer = new Timer(timeOut, (short) 0);
-						timer.start();
-						currentBase = currentBase + this.windowSize;
-					}
-					
-					// re-send packets starting from 1st packet that is not ACK.
-					while(currentWindowSize != 0) {
-						// remove ACK packets.
-						for (int i = 0; i < this.currentWindow.size(); i++) {
-							if (this.recivedACKNumbers.contains(currentWindow.get(i))) {
-								currentWindow.remove(i);
-								i--;
-								currentWindowSize--;
-							}
-						}
-						
-						// if not timer finished and all packets not sent.
-						if (this.timer.isTimerFinished() && currentWindowSize != 0) {
-							int currentWindowLimit;
-							
-							// calculate new base;
-							int newBase = currentWindow.get(0);
-							
-							// calculate new window limit.
-							if (lastPacketSent) {
-								currentWindowLimit = this.filePackets.size();
-							}
-							else {
-								if (newBase + this.windowSize >= this.filePackets.size()) {
-									currentWindowLimit = this.filePackets.size();
-									this.lastPacketSent = true;
-								}
-								else {
-									currentWindowLimit = newBase + this.windowSize;
-								}
-							}
-							
-							currentWindowSize = 0;
-							currentWindow.clear();
-							
-							// re-send packets.
-							for (int j = newBase; j < currentWindowLimit; j++) {
-								byte[] encodedData = filePackets.get(j).encode();
-								DatagramPacket filePacket = new DatagramPacket(encodedData, encodedData.length, clientIP, this.clientPort);
-								this.sendingSocket.send(filePacket);
-								System.out.println("server resent packet " + filePackets.get(j).getSequanceNumber());
-								
-								currentWindow.add(filePackets.get(j).getSequanceNumber());
-								currentWindowSize++;
-							}
-							
-							this.timer = new Timer(timeOut, (short) 0);
-							timer.start();
-						}
-					}
-				}
-			} catch(Exception e) {
-				e.printStackTrace();
-			}
-		}
-		
-		public short getClientPort() {
-			return clientPort;
-		}
-
-		public InetAddress getClientIP() {
-			return clientIP;
-		}
-
-		public void addAck(short ACKNumber) {
-			if (!this.recivedACKNumbers.contains(ACKNumber)) {
-				this.recivedACKNumbers.add(ACKNumber);
+			// the number of shards is optional.
+			tempString = read.readLine();
+			if (tempString != null && !tempString.trim().isEmpty()) {
+				this.shardCount = Math.max(1, Integer.parseInt(tempString.trim()));
 			}
+			
+			read.close();
+		} catch(Exception e) {
+			e.printStackTrace();
 		}
-		
 	}
 }
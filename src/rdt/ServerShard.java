@@ -0,0 +1,247 @@
+package rdt;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+/**
+ * one event loop of the server, the server runs one shard for every core. a shard owns a channel,
+ * a timer wheel and the sessions of the clients whose datagrams reach it, so the sessions of a
+ * shard are only touched by its own thread and the shards share nothing but the file cache.
+ * when the channels of the shards share the server port the kernel spreads the clients over
+ * them. otherwise only the first shard receives, it hands the datagrams of the clients that hash
+ * to another shard over to that shard, and the other shards only send through their channels.
+ */
+public class ServerShard extends Thread {
+	final Server server;
+	final int index;
+	DatagramChannel channel;
+	BatchedChannel io;
+	Selector selector;
+	SelectionKey key;
+	boolean dispatching;      // true if this shard receives the datagrams of every shard.
+	SessionTable sessions = new SessionTable();
+	TimerWheel timers = new TimerWheel(1, 1024);
+	ConcurrentLinkedQueue<Session> loadedSessions = new ConcurrentLinkedQueue<Session>();
+	ConcurrentLinkedQueue<Datagram> handedOver = new ConcurrentLinkedQueue<Datagram>();
+	volatile long lastActivity = TimerWheel.now();
+
+	/**
+	 * creates a new shard.
+	 * @param server the server that owns the shard.
+	 * @param index the index of the shard.
+	 * @param channel the channel of the shard, bound to the server port if the shard receives.
+	 * @param receiving true if the shard receives on its channel.
+	 * @param dispatching true if the shard receives the datagrams of every shard.
+	 * @throws IOException if the selector can not be opened.
+	 */
+	ServerShard(Server server, int index, DatagramChannel channel, boolean receiving, boolean dispatching) throws IOException {
+		super("server shard " + index);
+		this.server = server;
+		this.index = index;
+		this.channel = channel;
+		this.dispatching = dispatching;
+		this.io = new BatchedChannel(channel, 4 * (TCPPacket.MAX_DATA_SIZE + TCPPacket.EXTENDED_HEADER_SIZE), 1024);
+		this.selector = Selector.open();
+		this.key = channel.register(this.selector, receiving ? SelectionKey.OP_READ : 0);
+	}
+
+	/**
+	 * runs the event loop of the shard. for every request a session is created, its file is loaded
+	 * outside of the event loop and then the loop starts sending it. ACKs are passed to the session
+	 * of the client that sent them and the timer wheel calls back the sessions whose timers finished.
+	 * the loop stops when the server is shut down or when every shard is idle.
+	 */
+	@Override
+	public void run() {
+		ByteBuffer packetBuffer = ByteBuffer.allocateDirect(TCPPacket.MAX_DATA_SIZE + TCPPacket.EXTENDED_HEADER_SIZE);
+		int interestOps = this.key.interestOps();
+		long lastIdleCheck = 0;
+
+		try {
+			while(this.server.running) {
+				// without timers the loop has nothing to do until a datagram or a loaded session wakes it.
+				long wait = this.server.pollInterval;
+				if (this.timers.size() == 0 && this.sessions.isEmpty() && !this.io.hasPending()) {
+					long idleTime = TimerWheel.now() - Math.max(this.lastActivity, lastIdleCheck);
+					wait = Math.max(1, this.server.idleTimeOut - idleTime);
+				}
+				boolean readable = this.selector.select(wait) > 0 && this.key.isReadable();
+				this.selector.selectedKeys().clear();
+
+				// receive every datagram that is waiting in the channel and the datagrams handed over to this shard.
+				if (readable && this.io.receive(packetBuffer, (buffer, sender) -> this.dispatchDatagram(buffer, (InetSocketAddress) sender)) > 0) {
+					this.lastActivity = TimerWheel.now();
+				}
+				Datagram datagram;
+				while ((datagram = this.handedOver.poll()) != null) {
+					this.receiveDatagram(datagram.data, datagram.clientIP);
+					this.lastActivity = TimerWheel.now();
+				}
+
+				// start the sessions whose files are ready.
+				Session loadedSession;
+				while ((loadedSession = this.loadedSessions.poll()) != null) {
+					loadedSession.start();
+				}
+
+				// resend timed out packets.
+				this.timers.advance(TimerWheel.now());
+
+				// write the packets of this round, the rest waits until the channel can be written again.
+				this.io.flush();
+				this.key.interestOps(this.io.hasPending() ? interestOps | SelectionKey.OP_WRITE : interestOps);
+
+				// the server stops once all its shards are idle, a shard that is idle alone waits for the others.
+				long now = TimerWheel.now();
+				if (this.sessions.isEmpty() && now - Math.max(this.lastActivity, lastIdleCheck) > this.server.idleTimeOut) {
+					if (this.server.isIdle(now)) {
+						this.server.shutdown();
+					}
+					lastIdleCheck = now;
+				}
+			}
+		} catch(Exception e) {
+			e.printStackTrace();
+		} finally {
+			System.out.println("server shard " + this.index + " stopped, " + this.sessions + ", " + this.io);
+			this.close();
+		}
+	}
+
+	/**
+	 * passes a received datagram to the shard that owns its client.
+	 * @param buffer the buffer that holds the datagram.
+	 * @param sender the address that sent the datagram.
+	 * @throws IOException if the channel fails.
+	 */
+	private void dispatchDatagram(ByteBuffer buffer, InetSocketAddress sender) throws IOException {
+		ServerShard owner = this.dispatching ? this.server.getShard(sender) : this;
+		if (owner == this) {
+			this.receiveDatagram(buffer, sender.getAddress());
+		}
+		else {
+			owner.handOver(buffer, sender.getAddress());
+		}
+	}
+
+	/**
+	 * gives a datagram received by another shard to this shard, the datagram is copied.
+	 * @param buffer the buffer that holds the datagram.
+	 * @param clientIP the IP that sent the datagram.
+	 */
+	void handOver(ByteBuffer buffer, InetAddress clientIP) {
+		ByteBuffer data = ByteBuffer.allocate(buffer.remaining());
+		data.put(buffer);
+		data.flip();
+		this.handedOver.offer(new Datagram(data, clientIP));
+		this.selector.wakeup();
+	}
+
+	/**
+	 * handles one received datagram, a datagram that can not be handled is dropped so that it
+	 * does not stop the shard and the sessions on it.
+	 * @param packetBuffer the buffer that holds the datagram.
+	 * @param clientIP the IP that sent the datagram.
+	 * @throws IOException if the channel fails.
+	 */
+	private void receiveDatagram(ByteBuffer packetBuffer, InetAddress clientIP) throws IOException {
+		try {
+			this.handleDatagram(packetBuffer, clientIP);
+		} catch (RuntimeException e) {
+			this.server.log("server shard " + this.index + " dropped a malformed datagram from " + clientIP + ": " + e);
+		}
+	}
+	
+	/**
+	 * handles one received datagram, which is either an ACK packet, a probe or a request for a file.
+	 * @param packetBuffer the buffer that holds the datagram.
+	 * @param clientIP the IP that sent the datagram.
+	 * @throws IOException if the channel fails.
+	 */
+	private void handleDatagram(ByteBuffer packetBuffer, InetAddress clientIP) throws IOException {
+		if (ACKPacket.isACKPacket(packetBuffer)) {
+			ACKPacket receivedACKPacket = new ACKPacket();
+			receivedACKPacket.decode(packetBuffer);
+			this.server.log("server received ACK packet " + receivedACKPacket.getAckNumber());
+
+			if (!receivedACKPacket.isCorrupted()) {
+				// pass the ACK packet to the appropriate session.
+				Session session = this.sessions.get(clientIP, receivedACKPacket.getSourcePort(), receivedACKPacket.getTransferId());
+				if (session != null && session.started) {
+					session.lastACKTime = TimerWheel.now();
+					session.receiveAck(receivedACKPacket);
+				}
+			}
+		}
+		else {
+			TCPPacket receivedPacket = new TCPPacket();
+			receivedPacket.decode(packetBuffer);
+
+			// a probe is sent back as it is, so it costs the server no more than it cost the client.
+			if (receivedPacket.isProbe()) {
+				if (!receivedPacket.isCorrupted()) {
+					TCPPacket probePacket = new TCPPacket(this.server.serverPort, receivedPacket.getSourcePort(), receivedPacket.getSequanceNumber(),
+							receivedPacket.getTransferId(), receivedPacket.getData());
+					probePacket.setProbe(true);
+					this.io.send(probePacket.encode(), new InetSocketAddress(clientIP, receivedPacket.getSourcePort() & 0xFFFF));
+					this.server.log("server echoed probe of " + receivedPacket.getData().length + " bytes");
+				}
+				return;
+			}
+			this.server.log("server received request packet");
+
+			// the client repeats its request until data arrives, so a request may already have a session.
+			if (!receivedPacket.isCorrupted() && this.sessions.get(clientIP, receivedPacket.getSourcePort(), receivedPacket.getTransferId()) == null) {
+				// a client falls back to the original format when its extended requests are not answered in time,
+				// which also happens while a large file is still loading. the extended session keeps the transfer.
+				Session extendedSession = receivedPacket.isExtended() ? null
+						: this.sessions.getExtended(clientIP, receivedPacket.getSourcePort(), receivedPacket.getFileName());
+				if (extendedSession != null) {
+					this.server.log("server ignored request in the original format, the client has an extended transfer");
+					return;
+				}
+				Session session = this.server.createSession(this, receivedPacket, clientIP);
+				this.sessions.add(session);
+				this.server.fileLoader.execute(() -> {
+					session.load();
+					this.loadedSessions.offer(session);
+					this.selector.wakeup();
+				});
+			}
+		}
+	}
+
+	/**
+	 * closes the channel and the selector of the shard.
+	 */
+	void close() {
+		try {
+			this.selector.close();
+			this.channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public SessionTable getSessions() {
+		return sessions;
+	}
+
+	/**
+	 * a datagram that was received by another shard.
+	 */
+	private static class Datagram {
+		final ByteBuffer data;
+		final InetAddress clientIP;
+
+		Datagram(ByteBuffer data, InetAddress clientIP) {
+			this.data = data;
+			this.clientIP = clientIP;
+		}
+	}
+}
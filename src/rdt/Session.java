@@ -0,0 +1,291 @@
+package rdt;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+/**
+ * the state of one file transfer on the server. a session has no thread or socket of its own,
+ * the event loop of its shard passes it the ACKs it receives and the timeouts of its timers on the
+ * shard's timer wheel, and the session sends its packets through the shard's channel.
+ */
+abstract class Session implements TimerWheel.Handler {
+	final Server server;
+	final ServerShard shard;
+	final InetAddress clientIP;
+	final short clientPort;
+	final InetSocketAddress clientAddress;
+	final String fileName;
+	final int transferId;      // 0 for a client that uses the original format.
+	final boolean extended;
+	final int packetSize;      // the number of data bytes in a packet.
+	PacketSource filePackets;
+	SessionTable table;
+	boolean started = false;
+	boolean finished = false;
+	boolean abandoned = false;
+	long lastACKTime;
+	RttEstimator rtt;
+	int[] sentNumbers;   // the packet last sent from slot i % length and the time it was sent,
+	long[] sendTimes;    // -1 if it was sent more than once and its ACK can not be timed.
+	long ackSample = -1;
+	int newlyAcknowledged = 0;
+	CongestionControl congestion;   // null for stop and wait, which always has one packet in flight.
+	WindowTrace windowTrace;
+
+	/**
+	 * creates a new session, the file is not loaded until load() is called.
+	 * @param shard the shard of the server that owns this session.
+	 * @param receivedPacket the request packet sent by the client.
+	 * @param clientIP the IP of the client.
+	 * @param sendSlots the largest number of packets that are sent but not acknowledged.
+	 */
+	Session(ServerShard shard, TCPPacket receivedPacket, InetAddress clientIP, int sendSlots) {
+		this.server = shard.server;
+		this.shard = shard;
+		this.clientIP = clientIP;
+		this.clientPort = receivedPacket.getSourcePort();
+		this.clientAddress = new InetSocketAddress(clientIP, this.clientPort & 0xFFFF);
+		this.fileName = receivedPacket.getFileName();
+		this.transferId = receivedPacket.getTransferId();
+		this.extended = receivedPacket.isExtended();
+		int requestedSize = this.extended ? receivedPacket.getSequanceNumber() : 0;
+		this.packetSize = requestedSize > 0 ? Math.min(requestedSize, this.server.maxPacketSize) : this.server.fileHandler.packetSize;
+		this.rtt = new RttEstimator(this.server.timeOut, this.server.minTimeOut, this.server.maxTimeOut);
+		this.sentNumbers = new int[sendSlots];
+		this.sendTimes = new long[sendSlots];
+		Arrays.fill(this.sentNumbers, -1);
+	}
+
+	/**
+	 * loads the packets of the requested file in the format and packet size of the request, this
+	 * may compress the file so it is called outside of the event loop.
+	 */
+	void load() {
+		this.filePackets = this.server.fileHandler.getFilePackets(this.fileName, this.packetSize, this.clientPort, this.server.serverPort,
+				this.extended, this.transferId, this.sentNumbers.length);
+	}
+
+	/**
+	 * sends the first packets of the file.
+	 * @throws IOException if the channel fails.
+	 */
+	void start() throws IOException {
+		this.started = true;
+		this.lastACKTime = TimerWheel.now();
+		// a file that could not be loaded has no packets, so no timer or ACK would ever end the session.
+		if (this.filePackets.size() == 0) {
+			this.server.log("server has no packets for " + this.fileName + ", transfer to port " + (this.clientPort & 0xFFFF) + " abandoned");
+			this.abandoned = true;
+			this.finish();
+			return;
+		}
+		if (this.congestion != null) {
+			this.windowTrace = new WindowTrace(this.server.traceCapacity, this.lastACKTime);
+			this.windowTrace.record(this.lastACKTime, this.congestion.getWindow());
+		}
+		this.sendFirstPackets();
+	}
+
+	abstract void sendFirstPackets() throws IOException;
+
+	/**
+	 * handles an ACK packet that the client sent for this session. a packet in the original
+	 * format acknowledges one packet, a selective packet acknowledges every packet below its
+	 * ACK number and every packet in its blocks. the newest packet that the ACK acknowledges
+	 * gives a round trip time sample, the number of newly acknowledged packets is passed to the
+	 * congestion control. the 16 bit numbers of the original format are taken as the number
+	 * closest to the first packet that is not acknowledged, so they wrap around.
+	 * @param ackPacket the received ACK packet.
+	 * @throws IOException if the channel fails.
+	 */
+	void receiveAck(ACKPacket ackPacket) throws IOException {
+		boolean wrapped = !ackPacket.isExtended();
+		int ackNumber = this.unwrap(ackPacket.getAckNumber(), wrapped);
+		this.ackSample = -1;
+		this.newlyAcknowledged = 0;
+		if (!ackPacket.isSelective()) {
+			this.acknowledge(ackNumber);
+		}
+		else {
+			this.acknowledgeRange(this.getFirstUnacknowledged(), ackNumber);
+			for (int i = 0; i < ackPacket.getBlockCount(); i++) {
+				int blockStart = this.unwrap(ackPacket.getBlockStart(i), wrapped);
+				int blockEnd = this.unwrap(ackPacket.getBlockEnd(i), wrapped);
+				this.acknowledgeRange(Math.max(blockStart, this.getFirstUnacknowledged()), blockEnd);
+			}
+		}
+
+		if (this.ackSample >= 0) {
+			this.rtt.addSample(this.ackSample);
+		}
+		if (this.congestion != null && this.newlyAcknowledged > 0) {
+			this.congestion.onAck(this.newlyAcknowledged, this.lastACKTime);
+			this.windowTrace.record(this.lastACKTime, this.congestion.getWindow());
+		}
+		if (this.finished) {
+			this.server.log("server finished transfer to port " + (this.clientPort & 0xFFFF) + ", " + this.getStatistics());
+		}
+	}
+
+	/**
+	 * turns a 16 bit number into the packet number closest to the first packet that is not
+	 * acknowledged, serial number arithmetic as in RFC 1982.
+	 * @param number the received number.
+	 * @param wrapped false if the number is already a full packet number.
+	 */
+	private int unwrap(int number, boolean wrapped) {
+		if (!wrapped) {
+			return number;
+		}
+		int base = this.getFirstUnacknowledged();
+		return base + (short) (number - base);
+	}
+
+	private void acknowledgeRange(int start, int end) throws IOException {
+		for (int number = start; number < end && !this.finished; number++) {
+			this.acknowledge(number);
+		}
+	}
+
+	/**
+	 * handles the acknowledgment of one packet, packets that are already acknowledged are ignored.
+	 * @param number the number of the acknowledged packet.
+	 * @throws IOException if the channel fails.
+	 */
+	abstract void acknowledge(int number) throws IOException;
+
+	/**
+	 * returns the first packet that has not been acknowledged, every packet before it has been.
+	 */
+	abstract int getFirstUnacknowledged();
+
+	/**
+	 * times the ACK of a packet, called by the subclasses for every packet they acknowledge
+	 * for the first time. packets that were sent more than once are not timed.
+	 * @param number the number of the acknowledged packet.
+	 */
+	void measure(int number) {
+		this.newlyAcknowledged++;
+		int slot = number % this.sentNumbers.length;
+		if (this.sentNumbers[slot] == number && this.sendTimes[slot] >= 0) {
+			long sample = (System.nanoTime() - this.sendTimes[slot]) / 1000;
+			if (this.ackSample < 0 || sample < this.ackSample) {
+				this.ackSample = sample;
+			}
+		}
+	}
+
+	/**
+	 * marks the transfer as done, cancels the timers that are still scheduled and removes the
+	 * session from its table.
+	 */
+	void finish() {
+		this.finished = true;
+		this.cancelTimers();
+		if (this.windowTrace != null && this.server.traceDirectory != null) {
+			try {
+				this.windowTrace.write(this.server.traceDirectory + "/cwnd-" + (this.clientPort & 0xFFFF) + "-" + this.transferId + ".txt");
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if (this.table != null) {
+			this.table.reap(this);
+		}
+	}
+
+	abstract void cancelTimers();
+
+	/**
+	 * tells the congestion control that a packet was lost.
+	 * @param timedOut true if the retransmission timer finished, false if the loss was found
+	 * while other packets were being acknowledged.
+	 */
+	void reportLoss(boolean timedOut) {
+		long now = TimerWheel.now();
+		if (timedOut) {
+			this.congestion.onTimeout(now);
+		}
+		else {
+			this.congestion.onLoss(now);
+		}
+		this.windowTrace.record(now, this.congestion.getWindow());
+	}
+
+	/**
+	 * returns the round trip time and congestion window statistics of the transfer.
+	 */
+	String getStatistics() {
+		return this.windowTrace == null ? this.rtt.toString() : this.rtt + ", " + this.congestion.getName() + " " + this.windowTrace;
+	}
+
+	/**
+	 * gives up on a transfer whose client has not sent an ACK for longer than the session timeout,
+	 * called by the timer handlers before they resend anything.
+	 * @return true if the session was abandoned.
+	 */
+	boolean abandonIfIdle() {
+		if (TimerWheel.now() - this.lastACKTime > this.server.sessionTimeOut) {
+			this.server.log("server abandoned transfer to port " + (this.clientPort & 0xFFFF) + ", " + this.getStatistics());
+			this.abandoned = true;
+			this.finish();
+		}
+		return this.abandoned;
+	}
+
+	/**
+	 * sends one packet of the file to the client, if the socket buffer is full the packet is
+	 * dropped just like on the network and its timer sends it again. the time of the send is
+	 * kept to time the ACK of the packet.
+	 * @param index the index of the packet.
+	 * @param action the word to log the send with.
+	 * @throws IOException if the channel fails.
+	 */
+	void send(int index, String action) throws IOException {
+		byte[] encodedData = this.filePackets.get(index);
+		this.shard.io.send(encodedData, this.clientAddress);
+		this.server.log("server " + action + " packet " + index);
+
+		int slot = index % this.sentNumbers.length;
+		if (this.sentNumbers[slot] == index) {
+			this.sendTimes[slot] = -1;
+		}
+		else {
+			this.sentNumbers[slot] = index;
+			this.sendTimes[slot] = System.nanoTime();
+		}
+	}
+
+	public InetAddress getClientIP() {
+		return clientIP;
+	}
+
+	public short getClientPort() {
+		return clientPort;
+	}
+
+	public int getTransferId() {
+		return transferId;
+	}
+
+	public boolean isAbandoned() {
+		return abandoned;
+	}
+
+	public RttEstimator getRttEstimator() {
+		return rtt;
+	}
+
+	public CongestionControl getCongestionControl() {
+		return congestion;
+	}
+
+	public WindowTrace getWindowTrace() {
+		return windowTrace;
+	}
+
+	public boolean isFinished() {
+		return finished;
+	}
+}
@@ -0,0 +1,183 @@
+package rdt;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Iterator;
+/**
+ * measures how many concurrent transfers the server's event loop sustains.
+ * a single load generator thread plays many clients, each with its own channel, requests the
+ * same file for all of them at once and ACKs every packet it receives. the result is reported
+ * as completed sessions per second of server CPU time, which is the number of sessions one
+ * core can serve per second. the server runs the given number of shards, so the throughput can
+ * be compared for one shard and one shard per core.
+ * usage: SessionLoadBenchmark [sessions] [protocol] [window size] [file size in KB] [shards]
+ */
+public class SessionLoadBenchmark {
+	static final short SERVER_PORT = 5100;
+
+	public static void main(String[] args) throws Exception {
+		int sessionCount = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		int protocol = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		int windowSize = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+		int fileSize = args.length > 3 ? Integer.parseInt(args[3]) * 1024 : 64 * 1024;
+		int shardCount = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+		Path file = createInputFile(fileSize);
+		Server server = new Server("127.0.0.1", SERVER_PORT, windowSize);
+		server.setProtocol(protocol);
+		server.setVerbose(false);
+		server.setShards(shardCount);
+		server.start();
+
+		// compress the file before measuring, so every session is served from the cache.
+		server.fileHandler.getFilePackets(file.toString(), server.fileHandler.packetSize, (short) 0, (short) 0, false, 0, 1);
+
+		long startCpu = server.getCpuTime();
+		long startTime = System.nanoTime();
+		int completed = runClients(sessionCount, file.toString());
+		long time = System.nanoTime() - startTime;
+		long cpu = server.getCpuTime() - startCpu;
+
+		server.shutdown();
+		server.join();
+		Files.delete(file);
+
+		System.out.printf("protocol %d, window %d, %d KB file, %d shards%s%n", protocol, windowSize, fileSize / 1024,
+				server.getShards().length, server.isReusePort() ? " sharing the port" : "");
+		System.out.printf("%d of %d sessions completed in %.2f s, %.1f sessions/s%n", completed, sessionCount, time / 1e9, completed * 1e9 / time);
+		System.out.printf("server CPU %.2f s, %.1f sessions per core-second%n", cpu / 1e9, completed * 1e9 / Math.max(cpu, 1));
+	}
+
+	/**
+	 * creates a text file of the given size to transfer.
+	 * @param size the size of the file in bytes.
+	 * @return the path of the file.
+	 */
+	static Path createInputFile(int size) throws IOException {
+		String text = "peter piper picked a peck of pickled peppers.\n";
+		StringBuilder builder = new StringBuilder(size);
+		while (builder.length() < size) {
+			builder.append(text);
+		}
+		Path file = Files.createTempFile("session-load", ".txt");
+		Files.write(file, builder.substring(0, size).getBytes());
+		return file;
+	}
+
+	/**
+	 * runs all the clients until every transfer is done or 60 seconds have passed.
+	 * @param sessionCount the number of clients.
+	 * @param fileName the file that every client requests.
+	 * @return the number of completed transfers.
+	 */
+	private static int runClients(int sessionCount, String fileName) throws IOException {
+		InetSocketAddress serverAddress = new InetSocketAddress("127.0.0.1", SERVER_PORT);
+		Selector selector = Selector.open();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(2048);
+		int completed = 0;
+
+		for (int i = 0; i < sessionCount; i++) {
+			LoadClient client = new LoadClient();
+			client.channel = DatagramChannel.open();
+			client.channel.bind(new InetSocketAddress("127.0.0.1", 0));
+			client.channel.configureBlocking(false);
+			client.port = (short) client.channel.socket().getLocalPort();
+			client.channel.register(selector, SelectionKey.OP_READ, client);
+			client.request(fileName, serverAddress);
+		}
+
+		long deadline = System.currentTimeMillis() + 60000;
+		while (completed < sessionCount && System.currentTimeMillis() < deadline) {
+			selector.select(1000);
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				LoadClient client = (LoadClient) key.attachment();
+
+				buffer.clear();
+				while (client.channel.receive(buffer) != null) {
+					buffer.flip();
+					if (client.receive(buffer, serverAddress)) {
+						completed++;
+						key.cancel();
+						client.channel.close();
+						break;
+					}
+					buffer.clear();
+				}
+			}
+
+			// repeat the requests that were lost before the server answered.
+			for (SelectionKey key: selector.keys()) {
+				LoadClient client = (LoadClient) key.attachment();
+				if (client.received.isEmpty() && System.currentTimeMillis() - client.requestTime > 1000) {
+					client.request(fileName, serverAddress);
+				}
+			}
+		}
+
+		for (SelectionKey key: selector.keys()) {
+			key.channel().close();
+		}
+		selector.close();
+		return completed;
+	}
+
+	/**
+	 * the state of one simulated client.
+	 */
+	private static class LoadClient {
+		DatagramChannel channel;
+		short port;
+		long requestTime;
+		BitSet received = new BitSet();
+		int lastPacketNumber = -1;
+		ByteBuffer sendBuffer = ByteBuffer.allocate(1024);
+
+		void request(String fileName, InetSocketAddress serverAddress) throws IOException {
+			TCPPacket packet = new TCPPacket(this.port, SERVER_PORT, (short) 0, fileName.getBytes());
+			packet.setFileName(fileName);
+			this.sendBuffer.clear();
+			packet.encode(this.sendBuffer);
+			this.sendBuffer.flip();
+			this.channel.send(this.sendBuffer, serverAddress);
+			this.requestTime = System.currentTimeMillis();
+		}
+
+		/**
+		 * ACKs a received packet.
+		 * @return true once every packet of the file has been received.
+		 */
+		boolean receive(ByteBuffer buffer, InetSocketAddress serverAddress) throws IOException {
+			TCPPacket packet = new TCPPacket();
+			packet.decode(buffer);
+			if (packet.isCorrupted()) {
+				return false;
+			}
+
+			int sequanceNumber = packet.getSequanceNumber();
+			this.received.set(sequanceNumber);
+			if (packet.isFinalPacket()) {
+				this.lastPacketNumber = sequanceNumber;
+			}
+
+			ACKPacket ackPacket = new ACKPacket((short) packet.getSequanceNumber(), this.port);
+			ackPacket.setFinalACKPacket(packet.isFinalPacket());
+			this.sendBuffer.clear();
+			ackPacket.encode(this.sendBuffer);
+			this.sendBuffer.flip();
+			this.channel.send(this.sendBuffer, serverAddress);
+
+			return this.lastPacketNumber >= 0 && this.received.cardinality() == this.lastPacketNumber + 1;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package rdt;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Objects;
+/**
+ * the sessions of an event loop, keyed by the address and port of the client and the id of the
+ * transfer, so an ACK finds its session in constant time. packets in the original format carry
+ * no transfer id and use 0. sessions are removed as soon as they finish or are abandoned.
+ * the extended sessions are also kept by the address and port of their client and the requested
+ * file, so a request in the original format can find the extended session of the same client
+ * and file, and a client may have any number of extended transfers on one port.
+ * the table is only changed by the thread of its event loop, the counters may be read by any thread.
+ */
+public class SessionTable {
+	private final HashMap<SessionKey, Session> sessions = new HashMap<SessionKey, Session>();
+	private final HashMap<SessionKey, Session> extendedSessions = new HashMap<SessionKey, Session>();   // keyed with transfer id 0 and the file name.
+	private final SessionKey lookupKey = new SessionKey(null, (short) 0, 0, null);
+	private volatile int activeSessions = 0;
+	private volatile long totalSessions = 0;
+	private volatile long completedSessions = 0;
+	private volatile long abandonedSessions = 0;
+
+	/**
+	 * finds the session of a transfer.
+	 * @param clientIP the IP of the client.
+	 * @param clientPort the port of the client.
+	 * @param transferId the id of the transfer.
+	 * @return the session or null if there is no active session for the transfer.
+	 */
+	public Session get(InetAddress clientIP, short clientPort, int transferId) {
+		this.lookupKey.set(clientIP, clientPort, transferId);
+		return this.sessions.get(this.lookupKey);
+	}
+
+	/**
+	 * finds the extended session in which a client receives a file.
+	 * @param clientIP the IP of the client.
+	 * @param clientPort the port of the client.
+	 * @param fileName the requested file.
+	 * @return the session or null if the client has no active extended session for the file.
+	 */
+	public Session getExtended(InetAddress clientIP, short clientPort, String fileName) {
+		this.lookupKey.set(clientIP, clientPort, 0, fileName);
+		return this.extendedSessions.get(this.lookupKey);
+	}
+
+	/**
+	 * adds a new session, the session removes itself from the table when it finishes.
+	 * @param session the session to add.
+	 */
+	public void add(Session session) {
+		session.table = this;
+		this.sessions.put(new SessionKey(session.getClientIP(), session.getClientPort(), session.getTransferId(), null), session);
+		if (session.extended) {
+			this.extendedSessions.put(new SessionKey(session.getClientIP(), session.getClientPort(), 0, session.fileName), session);
+		}
+		this.activeSessions = this.sessions.size();
+		this.totalSessions++;
+	}
+
+	/**
+	 * removes a finished session.
+	 * @param session the session to remove.
+	 */
+	void reap(Session session) {
+		this.lookupKey.set(session.getClientIP(), session.getClientPort(), session.getTransferId(), null);
+		if (this.sessions.get(this.lookupKey) == session) {
+			this.sessions.remove(this.lookupKey);
+			this.lookupKey.set(session.getClientIP(), session.getClientPort(), 0, session.fileName);
+			if (this.extendedSessions.get(this.lookupKey) == session) {
+				this.extendedSessions.remove(this.lookupKey);
+			}
+			this.activeSessions = this.sessions.size();
+			if (session.isAbandoned()) {
+				this.abandonedSessions++;
+			}
+			else {
+				this.completedSessions++;
+			}
+		}
+	}
+
+	public boolean isEmpty() {
+		return sessions.isEmpty();
+	}
+
+	public int getActiveSessions() {
+		return activeSessions;
+	}
+
+	public long getTotalSessions() {
+		return totalSessions;
+	}
+
+	public long getCompletedSessions() {
+		return completedSessions;
+	}
+
+	public long getAbandonedSessions() {
+		return abandonedSessions;
+	}
+
+	@Override
+	public String toString() {
+		return "sessions: " + this.getActiveSessions() + " active, " + this.getTotalSessions() + " total, "
+				+ this.getCompletedSessions() + " completed, " + this.getAbandonedSessions() + " abandoned";
+	}
+
+	/**
+	 * identifies one transfer, the file name is null for the keys of the transfer ids.
+	 */
+	private static class SessionKey {
+		InetAddress clientIP;
+		short clientPort;
+		int transferId;
+		String fileName;
+
+		SessionKey(InetAddress clientIP, short clientPort, int transferId, String fileName) {
+			this.set(clientIP, clientPort, transferId, fileName);
+		}
+
+		void set(InetAddress clientIP, short clientPort, int transferId) {
+			this.set(clientIP, clientPort, transferId, null);
+		}
+
+		void set(InetAddress clientIP, short clientPort, int transferId, String fileName) {
+			this.clientIP = clientIP;
+			this.clientPort = clientPort;
+			this.transferId = transferId;
+			this.fileName = fileName;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof SessionKey)) {
+				return false;
+			}
+			SessionKey that = (SessionKey) object;
+			return this.clientPort == that.clientPort && this.transferId == that.transferId && this.clientIP.equals(that.clientIP)
+					&& Objects.equals(this.fileName, that.fileName);
+		}
+
+		@Override
+		public int hashCode() {
+			return ((this.clientIP.hashCode() * 31 + this.clientPort) * 31 + this.transferId) * 31 + Objects.hashCode(this.fileName);
+		}
+	}
+}
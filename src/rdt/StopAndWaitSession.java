@@ -0,0 +1,75 @@
+package rdt;
+
+import java.io.IOException;
+import java.net.InetAddress;
+/**
+ * a session that sends data accourding to the stop and wait protocol.
+ */
+class StopAndWaitSession extends Session {
+	int currentIndex = 0;
+	TimerWheel.Timeout timer = new TimerWheel.Timeout(this, 0);
+
+	/**
+	 * creates a new stop and wait session.
+	 * @param shard the shard of the server that owns this session.
+	 * @param receivedPacket the request packet sent by the client.
+	 * @param clientIP the IP of the client.
+	 */
+	StopAndWaitSession(ServerShard shard, TCPPacket receivedPacket, InetAddress clientIP) {
+		super(shard, receivedPacket, clientIP, 1);
+	}
+
+	@Override
+	void sendFirstPackets() throws IOException {
+		this.sendCurrentPacket("sent");
+	}
+
+	/**
+	 * once the current packet is acknowledged moves on to the next packet.
+	 */
+	@Override
+	void acknowledge(int number) throws IOException {
+		if (number != this.currentIndex) {
+			return;
+		}
+		this.measure(number);
+
+		if (this.filePackets.isFinalPacket(this.currentIndex)) {
+			this.finish();
+			return;
+		}
+
+		this.currentIndex++;
+		this.sendCurrentPacket("sent");
+	}
+
+	@Override
+	int getFirstUnacknowledged() {
+		return this.currentIndex;
+	}
+
+	/**
+	 * keeps sending the current packet until an ACK packet is received, doubling the timeout
+	 * every time.
+	 */
+	@Override
+	public void timeout(int number) throws IOException {
+		if (this.abandonIfIdle()) {
+			return;
+		}
+
+		this.rtt.backoff();
+		this.sendCurrentPacket("resent");
+	}
+
+	@Override
+	void cancelTimers() {
+		this.shard.timers.cancel(this.timer);
+	}
+
+	private void sendCurrentPacket(String action) throws IOException {
+		this.send(this.currentIndex, action);
+		this.timer.setNumber(this.currentIndex);
+		this.shard.timers.schedule(this.timer, this.rtt.getTimeOut());
+	}
+}
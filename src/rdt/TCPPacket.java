@@ -2,21 +2,41 @@ package rdt;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
 /**
  * represents a TCP packet.
+ * a packet in the original format has a 16 bit sequance number. an extended packet has a 32 bit
+ * sequance number and the id of its transfer after it, a client asks for the extended format by
+ * sending an extended request and the server answers in the format of the request. the checksum
+ * of an extended packet also covers the sequance number and the transfer id.
+ * the sequance number of an extended request carries the largest number of data bytes the client
+ * accepts in a packet, 0 leaves the size to the server. a probe packet is echoed by the server
+ * as it is, the client sends probes of growing sizes to find the largest packet that reaches
+ * the server and comes back.
  */
 public class TCPPacket implements Comparable<TCPPacket>{
+	public static final int HEADER_SIZE = 12;   // flags, ports, length, checksum and sequance number.
+	public static final int EXTENDED_HEADER_SIZE = 18;   // the sequance number takes 4 bytes, then the transfer id.
+	static final int SEQUANCE_OFFSET = 10;
+	static final int FINAL_FLAG = 0x01;
+	static final int EXTENDED_FLAG = 0x04;      // 0x02 marks selective ACK packets.
+	static final int PROBE_FLAG = 0x08;
+	public static final int MAX_DATA_SIZE = 65507 - EXTENDED_HEADER_SIZE;   // the largest UDP datagram over IPv4 less the header.
+	
 	short checkSum;
 	short sourcePort;
 	short destinationPort;
 	short lenght;
-	short sequanceNumber;
+	int sequanceNumber;
+	int transferId = 0;
 	String fileName;
 	boolean finalPacket = false;
 	boolean corrupted = false;
 	boolean fileData = false;
+	boolean extended = false;
+	boolean probe = false;
 	byte[] data;
+	ByteBuffer payload;   // the data inside the received buffer when the packet was decoded in place.
+	ByteBuffer frame;     // the received buffer when the packet was decoded in place.
 	
 	/**
 	 * Creates an empty TCP Packet, used when decoding a received packet.
@@ -36,7 +56,25 @@ public class TCPPacket implements Comparable<TCPPacket>{
 		this.destinationPort = destinationPort;
 		this.sequanceNumber = sequanceNumber;
 		this.data = data;
-		this.lenght = (short) (12 + data.length);
+		this.lenght = (short) (HEADER_SIZE + data.length);
+	}
+	
+	/**
+	 * creates a new TCP packet in the extended format from the given arguments.
+	 * @param sourcePort the port that the packet will be sent from.
+	 * @param destinationPort the port that the packet will be sent to.
+	 * @param sequanceNumber the sequance number of this packet.
+	 * @param transferId the id of the transfer this packet belongs to.
+	 * @param data the data to be added to this packet.
+	 */
+	public TCPPacket(short sourcePort, short destinationPort, int sequanceNumber, int transferId, byte[] data) {
+		this.sourcePort = sourcePort;
+		this.destinationPort = destinationPort;
+		this.sequanceNumber = sequanceNumber;
+		this.transferId = transferId;
+		this.extended = true;
+		this.data = data;
+		this.lenght = (short) (EXTENDED_HEADER_SIZE + data.length);
 	}
 	
 	/**
@@ -45,88 +83,76 @@ public class TCPPacket implements Comparable<TCPPacket>{
 	 * @return an array of bytes that contains the data of this packet.
 	 */
 	public byte[] encode() {
-		ArrayList<Byte> byteArrayList = new ArrayList<Byte>();
-		byte[] sourcePortBytes = this.shortToBytes(this.sourcePort);
-		byte[] destinationPortBytes = this.shortToBytes(this.destinationPort);
-		byte[] lengthBytes = this.shortToBytes(this.lenght);
-		byte[] sequanceNumberBytes = this.shortToBytes(this.sequanceNumber);
-		byte finalPacketByte;
-		byte fileDataByte;
-		
-		for (byte b: sourcePortBytes) {
-			byteArrayList.add(b);
-		}
-		
-		for (byte b: destinationPortBytes) {
-			byteArrayList.add(b);
-		}
-		
-		for (byte b: lengthBytes) {
-			byteArrayList.add(b);
-		}
-		
-		for (byte b: this.data) {
-			byteArrayList.add(b);
-		}
-		
-		byte[] byteArray = new byte[byteArrayList.size()];
-		for (int i = 0; i < byteArrayList.size(); i++) {
-			byteArray[i] = byteArrayList.get(i).byteValue();
-		}
-		
-		this.checkSum = this.calculateChecksum(byteArray);
-		byte[] checksumBytes = this.shortToBytes(this.checkSum);
-		
-		byteArrayList.clear();
+		byte[] byteArray = new byte[this.getHeaderSize() + this.data.length];
+		this.encode(ByteBuffer.wrap(byteArray));
+		return byteArray;
+	}
+	
+	/**
+	 * encodes this packet straight into the given buffer, starting at its position.
+	 * the buffer may be a heap or a direct buffer, its position is moved past the packet.
+	 * @param buffer the buffer to write into, must have room for the header and the data.
+	 */
+	public void encode(ByteBuffer buffer) {
+		int start = buffer.position();
+		this.checkSum = encodeFrame(buffer, this.finalPacket, this.fileData, this.sourcePort, this.destinationPort,
+				this.sequanceNumber, this.extended, this.transferId, ByteBuffer.wrap(this.data));
 		
-		if (this.finalPacket) {
-			finalPacketByte = 1;
-			byteArrayList.add(finalPacketByte);
-		}
-		else {
-			finalPacketByte = 0;
-			byteArrayList.add(finalPacketByte);
+		// the flags are not covered by the checksum.
+		if (this.probe) {
+			buffer.put(start, (byte) (buffer.get(start) | PROBE_FLAG));
 		}
+	}
+	
+	/**
+	 * encodes a packet from its fields straight into the given buffer, starting at its position, 
+	 * without creating a packet object. the data is read from the position to the limit of the
+	 * data buffer, whose position is not moved.
+	 * @param buffer the buffer to write into, its position is moved past the packet.
+	 * @param finalPacket true if this is the last packet of the file.
+	 * @param fileData true if the packet holds the name of the requested file.
+	 * @param sourcePort the port that the packet will be sent from.
+	 * @param destinationPort the port that the packet will be sent to.
+	 * @param sequanceNumber the sequance number of the packet, only the low 16 bits are sent in
+	 * the original format.
+	 * @param extended true to encode the packet in the extended format.
+	 * @param transferId the id of the transfer, only sent in the extended format.
+	 * @param data the data of the packet.
+	 * @return the checksum of the packet.
+	 */
+	static short encodeFrame(ByteBuffer buffer, boolean finalPacket, boolean fileData, short sourcePort,
+			short destinationPort, int sequanceNumber, boolean extended, int transferId, ByteBuffer data) {
+		ByteOrder order = buffer.order();
+		int start = buffer.position();
+		int dataLength = data.remaining();
+		int headerSize = extended ? EXTENDED_HEADER_SIZE : HEADER_SIZE;
+		buffer.order(ByteOrder.BIG_ENDIAN);
 		
-		if (this.fileData) {
-			fileDataByte = 1;
-			byteArrayList.add(fileDataByte);
+		buffer.put((byte) ((finalPacket ? FINAL_FLAG : 0) | (extended ? EXTENDED_FLAG : 0)));
+		buffer.put(fileData ? (byte) 1 : (byte) 0);
+		buffer.putShort(sourcePort);
+		buffer.putShort(destinationPort);
+		buffer.putShort((short) (headerSize + dataLength));
+		buffer.putShort((short) 0);
+		if (extended) {
+			buffer.putInt(sequanceNumber);
+			buffer.putInt(transferId);
 		}
 		else {
-			fileDataByte = 0;
-			byteArrayList.add(fileDataByte);
-		}
-		
-		for (byte b: sourcePortBytes) {
-			byteArrayList.add(b);
-		}
-		
-		for (byte b: destinationPortBytes) {
-			byteArrayList.add(b);
-		}
-		
-		for (byte b: lengthBytes) {
-			byteArrayList.add(b);
-		}
-		
-		for (byte b: checksumBytes) {
-			byteArrayList.add(b);
-		}
-		
-		for (byte b: sequanceNumberBytes) {
-			byteArrayList.add(b);
+			buffer.putShort((short) sequanceNumber);
 		}
+		buffer.put(data.duplicate());
 		
-		for (byte b: this.data) {
-			byteArrayList.add(b);
+		// the checksum covers the ports, the length, the extended header and the data.
+		long sum = Checksum.add(0, buffer, start + 2, 6);
+		if (extended) {
+			sum = Checksum.add(sum, buffer, start + SEQUANCE_OFFSET, EXTENDED_HEADER_SIZE - SEQUANCE_OFFSET);
 		}
-		
-		byteArray = new byte[byteArrayList.size()];
-		for (int i = 0; i < byteArrayList.size(); i++) {
-			byteArray[i] = byteArrayList.get(i).byteValue();
-		}
-		
-		return byteArray;
+		sum = Checksum.add(sum, buffer, start + headerSize, dataLength);
+		short checkSum = Checksum.finish(sum);
+		buffer.putShort(start + 8, checkSum);
+		buffer.order(order);
+		return checkSum;
 	}
 	
 	/**
@@ -134,88 +160,88 @@ public class TCPPacket implements Comparable<TCPPacket>{
 	 * @param data an array of bytes that represent an encoded packet.
 	 */
 	public void decode(byte data[]) {
-		ArrayList<Byte> byteArrayList = new ArrayList<Byte>();
-		int currentIndex = 0;
-		short calculatedCheckSum = 0;
-		byte[] sourcePortBytes = new byte[2];
-		byte[] destinationPortBytes = new byte[2];
-		byte[] lengthBytes = new byte[2];
-		byte[] checksumBytes = new byte[2];
-		byte[] sequanceNumberBytes = new byte[2];
-		byte finalPacketByte;
-		byte fileDataByte;
+		this.decode(ByteBuffer.wrap(data));
+	}
+	
+	/**
+	 * decodes a packet that starts at the position of the given buffer, the checksum is 
+	 * verified in place and only the data is copied out of the buffer.
+	 * the buffer position is moved past the packet.
+	 * @param buffer the buffer that holds an encoded packet.
+	 */
+	public void decode(ByteBuffer buffer) {
+		this.decode(buffer, true);
+	}
+	
+	/**
+	 * decodes a packet that starts at the position of the given buffer without copying its data,
+	 * the data stays a slice of the buffer, so the buffer must not be reused while the packet is.
+	 * the buffer position is moved past the packet.
+	 * @param buffer the buffer that holds an encoded packet.
+	 */
+	public void decodeInPlace(ByteBuffer buffer) {
+		this.frame = buffer;
+		this.decode(buffer, false);
+	}
+	
+	private void decode(ByteBuffer buffer, boolean copyData) {
+		ByteOrder order = buffer.order();
+		int start = buffer.position();
+		buffer.order(ByteOrder.BIG_ENDIAN);
 		
-		finalPacketByte = data[currentIndex];
-		if (finalPacketByte == 0) {
-			this.finalPacket = false;
+		// a datagram shorter than the header can not be trusted to index the buffer.
+		if (buffer.remaining() < HEADER_SIZE) {
+			this.corrupted = true;
+			this.data = new byte[0];
+			buffer.order(order);
+			return;
 		}
-		else {
-			this.finalPacket = true;
+		int flags = buffer.get();
+		this.finalPacket = (flags & FINAL_FLAG) != 0;
+		this.extended = (flags & EXTENDED_FLAG) != 0;
+		this.probe = (flags & PROBE_FLAG) != 0;
+		this.fileData = buffer.get() != 0;
+		this.sourcePort = buffer.getShort();
+		this.destinationPort = buffer.getShort();
+		this.lenght = buffer.getShort();
+		this.checkSum = buffer.getShort();
+		
+		// a damaged length field can not be trusted to index the buffer, large packets use the sign bit.
+		int headerSize = this.getHeaderSize();
+		int dataSize = (this.lenght & 0xFFFF) - headerSize;
+		if (dataSize < 0 || headerSize - SEQUANCE_OFFSET + dataSize > buffer.remaining()) {
+			this.corrupted = true;
+			this.data = new byte[0];
+			buffer.order(order);
+			return;
 		}
-		currentIndex++;
 		
-		fileDataByte = data[currentIndex];
-		if (fileDataByte == 0) {
-			this.fileData = false;
+		if (this.extended) {
+			this.sequanceNumber = buffer.getInt();
+			this.transferId = buffer.getInt();
 		}
 		else {
-			this.fileData = true;
+			this.sequanceNumber = buffer.getShort() & 0xFFFF;
 		}
-		currentIndex++;
-		
-		sourcePortBytes[0] = data[currentIndex];
-		byteArrayList.add(sourcePortBytes[0]);
-		currentIndex++;
-		sourcePortBytes[1] = data[currentIndex];
-		byteArrayList.add(sourcePortBytes[1]);
-		currentIndex++;
-		this.sourcePort = this.bytesToShort(sourcePortBytes);
-		
-		destinationPortBytes[0] = data[currentIndex];
-		byteArrayList.add(destinationPortBytes[0]);
-		currentIndex++;
-		destinationPortBytes[1] = data[currentIndex];
-		byteArrayList.add(destinationPortBytes[1]);
-		currentIndex++;
-		this.destinationPort = this.bytesToShort(destinationPortBytes);
-		
-		lengthBytes[0] = data[currentIndex];
-		byteArrayList.add(lengthBytes[0]);
-		currentIndex++;
-		lengthBytes[1] = data[currentIndex];
-		byteArrayList.add(lengthBytes[1]);
-		currentIndex++;
-		this.lenght = this.bytesToShort(lengthBytes);
+		buffer.order(order);
 		
-		checksumBytes[0] = data[currentIndex];
-		currentIndex++;
-		checksumBytes[1] = data[currentIndex];
-		currentIndex++;
-		this.checkSum = this.bytesToShort(checksumBytes);
-		
-		sequanceNumberBytes[0] = data[currentIndex];
-		currentIndex++;
-		sequanceNumberBytes[1] = data[currentIndex];
-		currentIndex++;
-		this.sequanceNumber = this.bytesToShort(sequanceNumberBytes);
-		
-		int dataSize = this.lenght - 12;
-		this.data = new byte[dataSize];
-		
-		for (int i = 0; i < dataSize; i++) {
-			this.data[i] = data[currentIndex];
-			byteArrayList.add(data[currentIndex]);
-			currentIndex++;
+		long sum = Checksum.add(0, buffer, start + 2, 6);
+		if (this.extended) {
+			sum = Checksum.add(sum, buffer, start + SEQUANCE_OFFSET, EXTENDED_HEADER_SIZE - SEQUANCE_OFFSET);
 		}
-		
-		byte[] byteArray = new byte[byteArrayList.size()];
-		for (int i = 0; i < byteArrayList.size(); i++) {
-			byteArray[i] = byteArrayList.get(i).byteValue();
+		sum = Checksum.add(sum, buffer, start + headerSize, dataSize);
+		if (this.checkSum != Checksum.finish(sum)) {
+			this.corrupted = true;
 		}
 		
-		calculatedCheckSum = this.calculateChecksum(byteArray);
-		if (this.checkSum != calculatedCheckSum) {
-			this.corrupted = true;
+		if (copyData || this.fileData) {
+			this.data = new byte[dataSize];
+			buffer.get(this.data);
+		}
+		else {
+			this.payload = buffer.slice();
+			this.payload.limit(dataSize);
+			buffer.position(buffer.position() + dataSize);
 		}
 		
 		if (this.fileData) {
@@ -229,35 +255,7 @@ public class TCPPacket implements Comparable<TCPPacket>{
 	 * @return the checksum of these bytes as short.
 	 */
 	public short calculateChecksum(byte[] buf) {
-	    int length = buf.length;
-	    int i = 0;
-
-	    long sum = 0;
-	    long data;
-
-	    while (length > 1) {
-	      data = (((buf[i] << 8) & 0xFF00) | ((buf[i + 1]) & 0xFF));
-	      sum += data;
-	      if ((sum & 0xFFFF0000) > 0) {
-	        sum = sum & 0xFFFF;
-	        sum += 1;
-	      }
-
-	      i += 2;
-	      length -= 2;
-	    }
-
-	    if (length > 0) {
-	      sum += (buf[i] << 8 & 0xFF00);
-	      if ((sum & 0xFFFF0000) > 0) {
-	        sum = sum & 0xFFFF;
-	        sum += 1;
-	      }
-	    }
-
-	    sum = ~sum;
-	    sum = sum & 0xFFFF;
-	    return (short) sum;
+		return Checksum.calculate(buf);
 	}
 	
 	public String getFileName() {
@@ -286,14 +284,65 @@ public class TCPPacket implements Comparable<TCPPacket>{
 		this.corrupted = true;
 	}
 
-	public short getSequanceNumber() {
+	/**
+	 * returns the sequance number, in the original format a number from 0 to 65535.
+	 */
+	public int getSequanceNumber() {
 		return sequanceNumber;
 	}
 
+	public void setSequanceNumber(int sequanceNumber) {
+		this.sequanceNumber = sequanceNumber;
+	}
+
+	public int getTransferId() {
+		return transferId;
+	}
+
+	public boolean isExtended() {
+		return extended;
+	}
+
+	public boolean isProbe() {
+		return probe;
+	}
+
+	public void setProbe(boolean probe) {
+		this.probe = probe;
+	}
+
+	/**
+	 * returns the number of bytes before the data, which depends on the format.
+	 */
+	public int getHeaderSize() {
+		return this.extended ? EXTENDED_HEADER_SIZE : HEADER_SIZE;
+	}
+
+	/**
+	 * returns the data, the data of a packet decoded in place is copied out of its buffer.
+	 */
 	public byte[] getData() {
+		if (this.data == null && this.payload != null) {
+			this.data = new byte[this.payload.remaining()];
+			this.payload.duplicate().get(this.data);
+		}
 		return data;
 	}
 
+	/**
+	 * returns the data without copying it.
+	 */
+	public ByteBuffer getPayload() {
+		return this.payload != null ? this.payload.duplicate() : ByteBuffer.wrap(this.data);
+	}
+
+	/**
+	 * returns the buffer the packet was decoded in place from, or null.
+	 */
+	public ByteBuffer getFrame() {
+		return frame;
+	}
+
 	public boolean isCorrupted() {
 		return corrupted;
 	}
@@ -325,6 +374,6 @@ public class TCPPacket implements Comparable<TCPPacket>{
     }
 
 	public int compareTo(TCPPacket that) {
-		return this.sequanceNumber - that.sequanceNumber;
+		return Integer.compare(this.sequanceNumber, that.sequanceNumber);
 	}
 }
@@ -0,0 +1,100 @@
+package rdt;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+/**
+ * runs many real clients at once against one server in the same JVM, first with every client and
+ * its handlers on platform threads and then on virtual threads if the runtime has them. each client
+ * takes three threads, so the platform run needs three times as many threads as clients while the
+ * virtual run only needs a few carrier threads. the completed transfers, the wall time, the largest
+ * number of platform threads alive at once and the used heap are reported for each mode. a mode is
+ * labelled by the threads the clients actually ran on, so a runtime that falls back to platform
+ * threads shows up as a second platform run.
+ * usage: ThreadLoadBenchmark [clients] [file size in KB]
+ */
+public class ThreadLoadBenchmark {
+	static final short SERVER_PORT = 5400;
+	static final int FIRST_CLIENT_PORT = 20000;
+
+	public static void main(String[] args) throws Exception {
+		int clientCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int fileSize = args.length > 1 ? Integer.parseInt(args[1]) * 1024 : 16 * 1024;
+
+		Path file = SessionLoadBenchmark.createInputFile(fileSize);
+		System.out.printf("%d clients, %d KB file%n", clientCount, fileSize / 1024);
+		System.out.printf("%8s %10s %10s %16s %12s%n", "threads", "completed", "time s", "platform threads", "heap MB");
+		run(file, clientCount, false);
+		if (WorkerThreads.isVirtualAvailable()) {
+			run(file, clientCount, true);
+		} else {
+			System.out.println("virtual threads are not available in java " + System.getProperty("java.version"));
+		}
+
+		Files.delete(file);
+	}
+
+	/**
+	 * transfers the file to all the clients at once and prints the result.
+	 * @param file the file that every client requests.
+	 * @param clientCount the number of clients.
+	 * @param virtual true to run the clients and the server's workers on virtual threads.
+	 */
+	private static void run(Path file, int clientCount, boolean virtual) throws Exception {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		Server server = new Server("127.0.0.1", SERVER_PORT, 8);
+		server.setProtocol(2);
+		server.setVerbose(false);
+		server.setVirtualThreads(virtual);
+		server.start();
+
+		Client[] clients = new Client[clientCount];
+		Thread[] clientThreads = new Thread[clientCount];
+		for (int i = 0; i < clientCount; i++) {
+			clients[i] = new Client("127.0.0.1", SERVER_PORT, "127.0.0.1", (short) (FIRST_CLIENT_PORT + i), file.toString());
+			clients[i].setLossProbability(-1);
+			clients[i].setCorruptProbability(-1);
+			clients[i].setVerbose(false);
+			clients[i].setVirtualThreads(virtual);
+			clients[i].setDecompress(false);
+			clients[i].setReceivedFileName(file + "-" + i + ".received");
+			clientThreads[i] = WorkerThreads.newThread("client " + i, virtual, clients[i]);
+		}
+
+		System.gc();
+		threads.resetPeakThreadCount();
+		long startTime = System.nanoTime();
+		for (Thread thread: clientThreads) {
+			thread.start();
+		}
+
+		// the heap is sampled while the transfers run, once every client has its buffers.
+		Thread.sleep(200);
+		Runtime runtime = Runtime.getRuntime();
+		long heap = runtime.totalMemory() - runtime.freeMemory();
+
+		int completed = 0;
+		long deadline = System.currentTimeMillis() + 120000;
+		for (Thread thread: clientThreads) {
+			thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+			if (!thread.isAlive()) {
+				completed++;
+			}
+		}
+		long time = System.nanoTime() - startTime;
+		int peakThreads = threads.getPeakThreadCount();
+		boolean ranVirtual = WorkerThreads.isVirtual(clientThreads[0]);
+
+		server.shutdown();
+		server.join();
+		for (Client client: clients) {
+			Files.deleteIfExists(Paths.get(client.getReceivedFileName()));
+		}
+
+		String mode = ranVirtual ? "virtual" : virtual ? "platform (virtual unavailable)" : "platform";
+		System.out.printf("%8s %10d %10.2f %16d %12.1f%n", mode, completed, time / 1e9,
+				peakThreads, heap / (1024.0 * 1024.0));
+	}
+}
@@ -0,0 +1,197 @@
+package rdt;
+
+import java.io.IOException;
+import java.util.ArrayList;
+/**
+ * a hashed timing wheel that holds the retransmission timers of all the sessions of an event loop.
+ * the wheel is an array of buckets, each bucket covers one tick and holds a linked list of the
+ * timeouts that expire in that tick modulo the size of the wheel. scheduling and cancelling a
+ * timeout are O(1) and a timeout costs one small object that sessions can reuse, so memory is
+ * bounded by the number of outstanding timers.
+ * the wheel is not thread safe, it must only be used by the thread of its event loop.
+ */
+public class TimerWheel {
+	private static final long CLOCK_ORIGIN = System.nanoTime();
+	private final Timeout[] buckets;
+	private final int mask;
+	private final int tickTime;
+	private final ArrayList<Timeout> expired = new ArrayList<Timeout>();
+	private long currentTick;
+	private int size = 0;
+
+	/**
+	 * creates a new timing wheel.
+	 * @param tickTime the length of one tick in milliseconds.
+	 * @param wheelSize the number of buckets, rounded up to a power of two.
+	 */
+	public TimerWheel(int tickTime, int wheelSize) {
+		int bucketCount = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+		this.buckets = new Timeout[bucketCount];
+		this.mask = bucketCount - 1;
+		this.tickTime = tickTime;
+		this.currentTick = now() / tickTime;
+	}
+
+	/**
+	 * returns the time of the wheels and the sessions in milliseconds. the clock is monotonic, it
+	 * counts from the start of the server and does not jump when the wall clock is set, so the
+	 * timeouts and the intervals that are measured with it can not go backwards or stretch.
+	 */
+	public static long now() {
+		return (System.nanoTime() - CLOCK_ORIGIN) / 1000000;
+	}
+
+	/**
+	 * schedules a timeout, if the timeout is already scheduled it is moved to its new time.
+	 * @param timeout the timeout to schedule.
+	 * @param delay the time in milliseconds until the timeout expires.
+	 */
+	public void schedule(Timeout timeout, long delay) {
+		if (timeout.state == Timeout.PENDING) {
+			this.unlink(timeout);
+		}
+
+		// the deadline is taken from the clock, the wheel may lag behind it between two advances.
+		long deadline = now() + delay;
+		timeout.deadlineTick = Math.max(this.currentTick + 1, (deadline + this.tickTime - 1) / this.tickTime);
+		timeout.bucket = (int) (timeout.deadlineTick & this.mask);
+		timeout.state = Timeout.PENDING;
+		timeout.previous = null;
+		timeout.next = this.buckets[timeout.bucket];
+		if (timeout.next != null) {
+			timeout.next.previous = timeout;
+		}
+		this.buckets[timeout.bucket] = timeout;
+		this.size++;
+	}
+
+	/**
+	 * cancels a timeout, nothing happens if it is not scheduled.
+	 * @param timeout the timeout to cancel.
+	 */
+	public void cancel(Timeout timeout) {
+		if (timeout.state == Timeout.PENDING) {
+			this.unlink(timeout);
+		}
+		timeout.state = Timeout.IDLE;
+	}
+
+	private void unlink(Timeout timeout) {
+		if (timeout.previous != null) {
+			timeout.previous.next = timeout.next;
+		}
+		else {
+			this.buckets[timeout.bucket] = timeout.next;
+		}
+		if (timeout.next != null) {
+			timeout.next.previous = timeout.previous;
+		}
+		timeout.previous = null;
+		timeout.next = null;
+		this.size--;
+	}
+
+	/**
+	 * moves the wheel to the given time and runs the handlers of every timeout that expired,
+	 * handlers may schedule and cancel timeouts, including the one that expired.
+	 * @param now the current time in milliseconds of now().
+	 * @return the number of timeouts that expired.
+	 * @throws IOException if a handler fails.
+	 */
+	public int advance(long now) throws IOException {
+		long targetTick = now / this.tickTime;
+		int count = 0;
+
+		// an empty wheel has nothing to visit on the way.
+		if (this.size == 0) {
+			this.currentTick = Math.max(this.currentTick, targetTick);
+			return 0;
+		}
+
+		while (this.currentTick < targetTick) {
+			this.currentTick++;
+
+			// detach the expired timeouts first, their handlers may change this bucket.
+			Timeout timeout = this.buckets[(int) (this.currentTick & this.mask)];
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				if (timeout.deadlineTick <= this.currentTick) {
+					this.unlink(timeout);
+					timeout.state = Timeout.FIRING;
+					this.expired.add(timeout);
+				}
+				timeout = next;
+			}
+
+			for (int i = 0; i < this.expired.size(); i++) {
+				Timeout expiredTimeout = this.expired.get(i);
+				if (expiredTimeout.state == Timeout.FIRING) {
+					expiredTimeout.state = Timeout.IDLE;
+					count++;
+					expiredTimeout.handler.timeout(expiredTimeout.number);
+				}
+			}
+			this.expired.clear();
+		}
+
+		return count;
+	}
+
+	/**
+	 * returns the number of scheduled timeouts.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * receives the expired timeouts of its owner.
+	 */
+	public interface Handler {
+		/**
+		 * called by the event loop when a timeout expires.
+		 * @param number the number of the expired timeout.
+		 * @throws IOException if handling the timeout fails.
+		 */
+		void timeout(int number) throws IOException;
+	}
+
+	/**
+	 * one timer on the wheel, it can be scheduled again after it expires or is cancelled.
+	 */
+	public static class Timeout {
+		static final int IDLE = 0;
+		static final int PENDING = 1;
+		static final int FIRING = 2;
+
+		final Handler handler;
+		int number;
+		int state = IDLE;
+		int bucket;
+		long deadlineTick;
+		Timeout previous;
+		Timeout next;
+
+		/**
+		 * creates a new timeout.
+		 * @param handler the handler to call when the timeout expires.
+		 * @param number the number passed to the handler, usually a sequance number.
+		 */
+		public Timeout(Handler handler, int number) {
+			this.handler = handler;
+			this.number = number;
+		}
+
+		public boolean isPending() {
+			return state == PENDING;
+		}
+
+		public int getNumber() {
+			return number;
+		}
+
+		public void setNumber(int number) {
+			this.number = number;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package rdt;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Random;
+/**
+ * compares the throughput of the sliding window senders with the senders that send a new window
+ * only once the last one is acknowledged, at several window sizes and loss rates.
+ * one client receives the file, drops packets at random and holds every ACK for a delay before
+ * sending it, so the transfer sees a round trip time like on a real path and not the microseconds
+ * of the loopback interface. the client ACKs every packet with a cumulative ACK and SACK blocks.
+ * usage: WindowBenchmark [file size in KB] [round trip delay in ms] [protocol]
+ */
+public class WindowBenchmark {
+	static final short SERVER_PORT = 5200;
+	static final int[] WINDOW_SIZES = {4, 16, 64};
+	static final int[] LOSS_RATES = {0, 1, 5};
+
+	public static void main(String[] args) throws Exception {
+		int fileSize = args.length > 0 ? Integer.parseInt(args[0]) * 1024 : 512 * 1024;
+		int delay = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int protocol = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+		Path file = SessionLoadBenchmark.createInputFile(fileSize);
+		Server server = new Server("127.0.0.1", SERVER_PORT, WINDOW_SIZES[0]);
+		server.setProtocol(protocol);
+		server.setVerbose(false);
+		server.idleTimeOut = Integer.MAX_VALUE;
+		server.start();
+
+		// compress the file before measuring, so every transfer is served from the cache.
+		long dataSize = server.fileHandler.getFilePackets(file.toString(), server.fileHandler.packetSize, (short) 0, (short) 0, false, 0, 1).getDataSize();
+
+		System.out.printf("protocol %d, %d KB file (%d KB compressed), %d ms round trip%n", protocol, fileSize / 1024, dataSize / 1024, delay);
+		System.out.printf("%6s %6s %14s %14s %8s%n", "window", "loss", "batch KB/s", "sliding KB/s", "speedup");
+		for (int windowSize: WINDOW_SIZES) {
+			for (int lossRate: LOSS_RATES) {
+				server.windowSize = windowSize;
+				server.setSlidingWindow(false);
+				double batch = dataSize / 1024.0 / transfer(server, file.toString(), lossRate, delay);
+				server.setSlidingWindow(true);
+				double sliding = dataSize / 1024.0 / transfer(server, file.toString(), lossRate, delay);
+				System.out.printf("%6d %5d%% %14.1f %14.1f %7.2fx%n", windowSize, lossRate, batch, sliding, sliding / batch);
+			}
+		}
+
+		server.shutdown();
+		server.join();
+		Files.delete(file);
+	}
+
+	/**
+	 * transfers the file to one client.
+	 * @param server the server to request the file from.
+	 * @param fileName the file to request.
+	 * @param lossRate the percentage of data packets the client drops.
+	 * @param delay the time in milliseconds every ACK is held before it is sent.
+	 * @return the time in seconds until the client received the whole file.
+	 */
+	private static double transfer(Server server, String fileName, int lossRate, int delay) throws IOException, InterruptedException {
+		InetSocketAddress serverAddress = new InetSocketAddress("127.0.0.1", SERVER_PORT);
+		DatagramChannel channel = DatagramChannel.open();
+		channel.bind(new InetSocketAddress("127.0.0.1", 0));
+		channel.configureBlocking(false);
+		Selector selector = Selector.open();
+		channel.register(selector, SelectionKey.OP_READ);
+		short port = (short) channel.socket().getLocalPort();
+
+		Random random = new Random(lossRate);
+		AckWindow received = new AckWindow(8192);
+		ArrayDeque<DelayedAck> ackQueue = new ArrayDeque<DelayedAck>();
+		int[] blocks = new int[2 * ACKPacket.MAX_BLOCKS];
+		ByteBuffer buffer = ByteBuffer.allocateDirect(2048);
+		int highestPacketNumber = -1;
+		int lastPacketNumber = -1;
+
+		TCPPacket request = new TCPPacket(port, SERVER_PORT, (short) 0, fileName.getBytes());
+		request.setFileName(fileName);
+		channel.send(ByteBuffer.wrap(request.encode()), serverAddress);
+
+		long startTime = System.nanoTime();
+		long deadline = System.currentTimeMillis() + 120000;
+		double time = -1;
+		while (System.currentTimeMillis() < deadline) {
+			// once the file is received keep sending the delayed ACKs until the server finished.
+			if (time >= 0 && ackQueue.isEmpty() && server.getActiveSessions() == 0) {
+				break;
+			}
+
+			long wait = ackQueue.isEmpty() ? 10 : Math.max(1, ackQueue.peek().sendTime - System.currentTimeMillis());
+			selector.select(wait);
+			selector.selectedKeys().clear();
+
+			buffer.clear();
+			while (channel.receive(buffer) != null) {
+				buffer.flip();
+				TCPPacket packet = new TCPPacket();
+				packet.decode(buffer);
+				buffer.clear();
+				if (packet.isCorrupted() || random.nextInt(100) < lossRate) {
+					continue;
+				}
+
+				int sequanceNumber = packet.getSequanceNumber() & 0xFFFF;
+				if (received.mark(sequanceNumber)) {
+					received.advance();
+					highestPacketNumber = Math.max(highestPacketNumber, sequanceNumber);
+				}
+				if (packet.isFinalPacket()) {
+					lastPacketNumber = sequanceNumber;
+				}
+
+				int blockCount = received.getBlocks(highestPacketNumber + 1, blocks, ACKPacket.MAX_BLOCKS);
+				ACKPacket ackPacket = new ACKPacket((short) received.getBase(), port, blocks, blockCount);
+				ackPacket.setFinalACKPacket(lastPacketNumber >= 0);
+				ackQueue.add(new DelayedAck(ackPacket.encode(), System.currentTimeMillis() + delay));
+
+				if (time < 0 && lastPacketNumber >= 0 && received.getBase() == lastPacketNumber + 1) {
+					time = (System.nanoTime() - startTime) / 1e9;
+				}
+			}
+
+			while (!ackQueue.isEmpty() && ackQueue.peek().sendTime <= System.currentTimeMillis()) {
+				channel.send(ByteBuffer.wrap(ackQueue.poll().data), serverAddress);
+			}
+		}
+
+		selector.close();
+		channel.close();
+		// let the server send what it still has in flight before the next transfer starts.
+		Thread.sleep(100);
+		return time;
+	}
+
+	/**
+	 * an encoded ACK packet and the time it is sent at.
+	 */
+	private static class DelayedAck {
+		final byte[] data;
+		final long sendTime;
+
+		DelayedAck(byte[] data, long sendTime) {
+			this.data = data;
+			this.sendTime = sendTime;
+		}
+	}
+}
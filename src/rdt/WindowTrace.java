@@ -0,0 +1,96 @@
+package rdt;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+/**
+ * records the congestion window of a session over time, one entry for every change of the
+ * window. once the trace is full further changes are only counted.
+ */
+public class WindowTrace {
+	private final int[] times;     // milliseconds since the start of the trace.
+	private final int[] windows;
+	private final long startTime;
+	private int count = 0;
+	private long droppedCount = 0;
+	private int maxWindow = 0;
+	private int lastWindow = -1;
+
+	/**
+	 * creates a new trace.
+	 * @param capacity the largest number of entries that are kept.
+	 * @param startTime the time in milliseconds that the times are relative to.
+	 */
+	public WindowTrace(int capacity, long startTime) {
+		this.times = new int[capacity];
+		this.windows = new int[capacity];
+		this.startTime = startTime;
+	}
+
+	/**
+	 * records the window if it changed since the last entry.
+	 * @param now the current time in milliseconds.
+	 * @param window the congestion window in packets.
+	 */
+	public void record(long now, int window) {
+		if (window == this.lastWindow) {
+			return;
+		}
+		this.lastWindow = window;
+		this.maxWindow = Math.max(this.maxWindow, window);
+
+		if (this.count == this.times.length) {
+			this.droppedCount++;
+			return;
+		}
+		this.times[this.count] = (int) (now - this.startTime);
+		this.windows[this.count] = window;
+		this.count++;
+	}
+
+	/**
+	 * writes the trace as lines of the time in milliseconds and the window.
+	 * @param filePath the file to write.
+	 * @throws IOException if the file can not be written.
+	 */
+	public void write(String filePath) throws IOException {
+		PrintWriter writer = new PrintWriter(new FileWriter(filePath));
+		try {
+			for (int i = 0; i < this.count; i++) {
+				writer.println(this.times[i] + " " + this.windows[i]);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public int getTime(int index) {
+		return times[index];
+	}
+
+	public int getWindow(int index) {
+		return windows[index];
+	}
+
+	public long getDroppedCount() {
+		return droppedCount;
+	}
+
+	public int getMaxWindow() {
+		return maxWindow;
+	}
+
+	public int getLastWindow() {
+		return lastWindow;
+	}
+
+	@Override
+	public String toString() {
+		return "cwnd: " + (this.size() + this.getDroppedCount()) + " changes, max " + this.getMaxWindow()
+				+ ", last " + this.getLastWindow();
+	}
+}
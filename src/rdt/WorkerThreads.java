@@ -0,0 +1,122 @@
+package rdt;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+/**
+ * creates the threads that run the work of the server and the client, either platform threads or
+ * virtual threads when the runtime has them (java 21 and later). virtual threads are looked up by
+ * reflection so the code still compiles for and runs on java 8, where the platform threads are
+ * used instead. the first request for virtual threads that gets platform threads is logged once.
+ */
+public class WorkerThreads {
+	private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+	private static final Method NEW_THREAD_PER_TASK_EXECUTOR = findMethod(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+	private static final Method IS_VIRTUAL = findMethod(Thread.class, "isVirtual");
+	private static volatile boolean failed = false;      // true once creating virtual threads failed.
+	private static final AtomicBoolean warned = new AtomicBoolean();
+
+	private WorkerThreads() {
+	}
+
+	private static Method findMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+		try {
+			return type.getMethod(name, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * returns true if the runtime can create virtual threads.
+	 */
+	public static boolean isVirtualAvailable() {
+		return OF_VIRTUAL != null && NEW_THREAD_PER_TASK_EXECUTOR != null && !failed;
+	}
+
+	/**
+	 * returns true if a thread is a virtual thread.
+	 * @param thread the thread.
+	 */
+	public static boolean isVirtual(Thread thread) {
+		try {
+			return IS_VIRTUAL != null && (Boolean) IS_VIRTUAL.invoke(thread);
+		} catch (ReflectiveOperationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * logs once that virtual threads were asked for but platform threads are used.
+	 * @param reason why virtual threads can not be created.
+	 */
+	private static void warnUnavailable(String reason) {
+		if (warned.compareAndSet(false, true)) {
+			System.out.println("virtual threads are not available (" + reason + "), platform threads are used instead");
+		}
+	}
+
+	/**
+	 * returns a factory of threads with the given name.
+	 * @param name the name of the threads, virtual threads get a number after it.
+	 * @param virtual true for virtual threads, platform threads are created if the runtime has none.
+	 * @param daemon true if platform threads should not keep the JVM running, virtual threads never do.
+	 * @return the thread factory.
+	 */
+	public static ThreadFactory factory(String name, boolean virtual, boolean daemon) {
+		if (virtual && isVirtualAvailable()) {
+			try {
+				Object builder = OF_VIRTUAL.invoke(null);
+				Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+				builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + " ", 0L);
+				return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+			} catch (ReflectiveOperationException e) {
+				// a preview runtime may have the methods but refuse to create virtual threads.
+				failed = true;
+				warnUnavailable(String.valueOf(e.getCause() != null ? e.getCause() : e));
+			}
+		}
+		else if (virtual) {
+			warnUnavailable("java " + System.getProperty("java.version"));
+		}
+
+		return runnable -> {
+			Thread thread = new Thread(runnable, name);
+			thread.setDaemon(daemon);
+			return thread;
+		};
+	}
+
+	/**
+	 * returns an executor that runs every task on a thread of its own, virtual threads are created
+	 * for every task while platform threads are cached and reused.
+	 * @param name the name of the threads.
+	 * @param virtual true for virtual threads, platform threads are used if the runtime has none.
+	 * @return the executor.
+	 */
+	public static ExecutorService executor(String name, boolean virtual) {
+		ThreadFactory factory = factory(name, virtual, true);
+		if (virtual && isVirtualAvailable()) {
+			try {
+				return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+			} catch (ReflectiveOperationException e) {
+				failed = true;
+				warnUnavailable(String.valueOf(e.getCause() != null ? e.getCause() : e));
+			}
+		}
+		return Executors.newCachedThreadPool(factory);
+	}
+
+	/**
+	 * creates a thread that is not started.
+	 * @param name the name of the thread.
+	 * @param virtual true for a virtual thread, a platform thread is created if the runtime has none.
+	 * @param task the work of the thread.
+	 * @return the new thread.
+	 */
+	public static Thread newThread(String name, boolean virtual, Runnable task) {
+		return factory(name, virtual, false).newThread(task);
+	}
+}